@@ -0,0 +1,73 @@
+package course.reversi.benchmarks;
+
+/*
+
+    Content:
+
+    The positions every benchmark runs on. They are reached by random play from the start with fixed seeds,
+    so every run (and every release) measures exactly the same positions. Three game phases:
+
+    -   OPENING     8 plies played, 52 empty squares
+    -   MIDGAME     30 plies played
+    -   ENDGAME     46 plies played, 14 empty squares (where the endgame solvers take over)
+
+ */
+
+import course.reversi.BitBoard;
+import course.reversi.Reversi;
+
+import java.util.Random;
+
+public final class BenchmarkPositions {
+
+    public enum Phase {
+        OPENING(8),
+        MIDGAME(30),
+        ENDGAME(46);
+
+        final int plies;
+
+        Phase(int plies) {
+            this.plies = plies;
+        }
+    }
+
+    public static final int COUNT = 16;
+    private static final long SEED = 20260101L;
+
+    private BenchmarkPositions() {
+    }
+
+    // COUNT positions of the phase, each with the side to move in movers[i]. Positions where the side to move
+    // has no legal move are skipped, so every position has at least one.
+    public static BitBoard[] positions(Phase phase, char[] movers) {
+        BitBoard[] positions = new BitBoard[COUNT];
+        Random random = new Random(SEED + phase.ordinal());
+        int[] moves = new int[32];
+
+        int found = 0;
+        while (found < COUNT) {
+            BitBoard board = new BitBoard();
+            char player = Reversi.BLACK;
+            int ply = 0;
+            while (ply < phase.plies) {
+                int n = board.generateMoves(player, moves);
+                if (n == 0) {
+                    if (board.legalMoves(Reversi.getOpponent(player)) == 0) {
+                        break;
+                    }
+                } else {
+                    board.makeMove(moves[random.nextInt(n)], player);
+                    ply++;
+                }
+                player = Reversi.getOpponent(player);
+            }
+            if (ply == phase.plies && board.legalMoves(player) != 0) {
+                positions[found] = board;
+                movers[found] = player;
+                found++;
+            }
+        }
+        return positions;
+    }
+}
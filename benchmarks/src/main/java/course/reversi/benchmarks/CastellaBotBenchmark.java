@@ -0,0 +1,71 @@
+package course.reversi.benchmarks;
+
+/*
+
+    Content:
+
+    CastellaBot's search at fixed depths, one thread, with no time limit. The transposition table is cleared
+    before every invocation, so each one is a search from scratch and not a lookup of the previous result.
+    The endgame solver is switched off, so ENDGAME positions measure the search as well.
+
+ */
+
+import course.reversi.BitBoard;
+import course.reversi.CastellaBot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CastellaBotBenchmark {
+
+    @Param({"OPENING", "MIDGAME", "ENDGAME"})
+    public BenchmarkPositions.Phase phase;
+
+    @Param({"4", "6", "8"})
+    public int depth;
+
+    private BitBoard[] boards;
+    private final char[] movers = new char[BenchmarkPositions.COUNT];
+    private CastellaBot bot;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        boards = BenchmarkPositions.positions(phase, movers);
+        bot = new CastellaBot();
+        bot.setMaxDepth(depth);
+        bot.setTimeBudget(Long.MAX_VALUE / 2_000_000L);
+        bot.setEndgameEmpties(0);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTable() {
+        bot.newGame();
+    }
+
+    // one search per invocation, going round the positions of the phase
+    @Benchmark
+    public void search(Blackhole blackhole) {
+        int i = next;
+        next = (next + 1) % boards.length;
+        blackhole.consume(bot.getBotMove(boards[i], movers[i]));
+    }
+}
@@ -0,0 +1,81 @@
+package course.reversi.benchmarks;
+
+/*
+
+    Content:
+
+    MomijiManjuBot's evaluation: extracting the feature vector of one position, scoring all children of a
+    position in one pass (what a move costs apart from the solver), and the pattern-table value.
+
+ */
+
+import course.reversi.BitBoard;
+import course.reversi.MomijiManjuBot;
+import course.reversi.PatternBoard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+
+    @Param({"OPENING", "MIDGAME", "ENDGAME"})
+    public BenchmarkPositions.Phase phase;
+
+    private PatternBoard[] boards;
+    private final char[] movers = new char[BenchmarkPositions.COUNT];
+    private final double[] features = new double[16];
+    private final int[] moves = new int[32];
+    private final double[] values = new double[32];
+    private MomijiManjuBot bot;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BitBoard[] positions = BenchmarkPositions.positions(phase, movers);
+        boards = new PatternBoard[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            boards[i] = new PatternBoard();
+            boards[i].copyFrom(positions[i]);
+        }
+        bot = new MomijiManjuBot();
+    }
+
+    @Benchmark
+    public void extractFeatures(Blackhole blackhole) {
+        for (int i = 0; i < boards.length; i++) {
+            bot.extractFeatures(boards[i], movers[i], features);
+            blackhole.consume(features);
+        }
+    }
+
+    @Benchmark
+    public void scoreMoves(Blackhole blackhole) {
+        for (int i = 0; i < boards.length; i++) {
+            blackhole.consume(bot.scoreMoves(boards[i], movers[i], moves, values));
+        }
+    }
+
+    @Benchmark
+    public void evaluate(Blackhole blackhole) {
+        for (int i = 0; i < boards.length; i++) {
+            blackhole.consume(bot.evaluate(boards[i], movers[i]));
+        }
+    }
+}
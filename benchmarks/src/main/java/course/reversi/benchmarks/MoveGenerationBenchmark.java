@@ -0,0 +1,110 @@
+package course.reversi.benchmarks;
+
+/*
+
+    Content:
+
+    The board primitives, on the char[][] board the UI uses and on the BitBoard the bots use. Every invocation
+    works through all positions of the phase, so the score is the time for BenchmarkPositions.COUNT calls.
+
+ */
+
+import course.reversi.BitBoard;
+import course.reversi.Reversi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveGenerationBenchmark {
+
+    @Param({"OPENING", "MIDGAME", "ENDGAME"})
+    public BenchmarkPositions.Phase phase;
+
+    private BitBoard[] boards;
+    private char[][][] arrays;
+    private final char[] movers = new char[BenchmarkPositions.COUNT];
+    private final int[][] firstMove = new int[BenchmarkPositions.COUNT][];
+    private final int[] moveBuffer = new int[32];
+    private char[][] scratch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        boards = BenchmarkPositions.positions(phase, movers);
+        arrays = new char[boards.length][][];
+        for (int i = 0; i < boards.length; i++) {
+            arrays[i] = boards[i].toArray();
+            int square = Long.numberOfTrailingZeros(boards[i].legalMoves(movers[i]));
+            firstMove[i] = new int[] { square / 8, square % 8 };
+        }
+        scratch = new char[8][8];
+    }
+
+    @Benchmark
+    public void getValidMovesList(Blackhole blackhole) {
+        for (int i = 0; i < arrays.length; i++) {
+            blackhole.consume(Reversi.getValidMoves(arrays[i], movers[i]));
+        }
+    }
+
+    @Benchmark
+    public void getValidMovesArray(Blackhole blackhole) {
+        for (int i = 0; i < arrays.length; i++) {
+            blackhole.consume(Reversi.getValidMoves(arrays[i], movers[i], moveBuffer));
+        }
+    }
+
+    @Benchmark
+    public void copyBoard(Blackhole blackhole) {
+        for (char[][] board : arrays) {
+            blackhole.consume(Reversi.copyBoard(board));
+        }
+    }
+
+    // the move is played on a scratch copy of the position, copying it back in is part of the measured time
+    @Benchmark
+    public void makeMove(Blackhole blackhole) {
+        for (int i = 0; i < arrays.length; i++) {
+            for (int row = 0; row < 8; row++) {
+                System.arraycopy(arrays[i][row], 0, scratch[row], 0, 8);
+            }
+            Reversi.makeMove(scratch, firstMove[i][0], firstMove[i][1], movers[i]);
+            blackhole.consume(scratch);
+        }
+    }
+
+    @Benchmark
+    public void bitBoardLegalMoves(Blackhole blackhole) {
+        for (int i = 0; i < boards.length; i++) {
+            blackhole.consume(boards[i].legalMoves(movers[i]));
+        }
+    }
+
+    @Benchmark
+    public void bitBoardMakeUndo(Blackhole blackhole) {
+        for (int i = 0; i < boards.length; i++) {
+            BitBoard board = boards[i];
+            int square = firstMove[i][0] * 8 + firstMove[i][1];
+            long flipped = board.makeMove(square, movers[i]);
+            board.undoMove(square, flipped, movers[i]);
+            blackhole.consume(flipped);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package course.reversi.benchmarks;
+
+/*
+
+    Content:
+
+    Entry point of benchmarks.jar. Runs the JMH benchmarks and always writes the results as JSON, by default
+    to jmh-results.json, so the numbers of two releases can be compared with any JSON diff (or loaded into
+    a JMH visualizer).
+
+    Usage: java -jar benchmarks.jar [results file] [benchmark regex]
+    e.g.   java -jar benchmarks.jar release-1.2.json MoveGeneration
+
+ */
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class RunBenchmarks {
+
+    public static void main(String[] args) throws RunnerException {
+        String resultsFile = args.length > 0 ? args[0] : "jmh-results.json";
+        String include = args.length > 1 ? args[1] : RunBenchmarks.class.getPackageName() + ".*Benchmark";
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .resultFormat(ResultFormatType.JSON)
+                .result(resultsFile)
+                .build();
+        new Runner(options).run();
+        System.out.println("Results written to " + resultsFile);
+    }
+}
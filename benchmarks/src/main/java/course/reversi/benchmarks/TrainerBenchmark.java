@@ -0,0 +1,58 @@
+package course.reversi.benchmarks;
+
+/*
+
+    Content:
+
+    One TDBotTrainer game, including the learning step at its end, against each curriculum opponent. The
+    trainer and the opponent are seeded, so every run plays the same sequence of games and runs compare.
+
+ */
+
+import course.reversi.DumbBot;
+import course.reversi.MapleBot;
+import course.reversi.SimpleBot;
+import course.reversi.TDBotTrainer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrainerBenchmark {
+
+    @Param({"DumbBot", "MapleBot"})
+    public String opponentName;
+
+    private static final long SEED = 20260101L;
+
+    private TDBotTrainer trainer;
+    private SimpleBot opponent;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        trainer = new TDBotTrainer(SEED);
+        opponent = opponentName.equals("MapleBot") ? new MapleBot() : new DumbBot();
+        opponent.setSeed(SEED);
+    }
+
+    @Benchmark
+    public void trainingGame() {
+        trainer.playTrainingGame(opponent);
+    }
+}
@@ -0,0 +1,404 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    Arena plays bots against each other without the UI and reports how they compare.
+
+    -   pairings:   ROUND_ROBIN plays every bot against every other, GAUNTLET plays the first bot against each
+                    of the others (e.g. a changed bot against the versions it has to beat)
+    -   openings:   each game starts from an opening position reached by a few random moves. Candidates are
+                    scored with a short CastellaBot search and only the most level ones are kept. Every opening
+                    is played twice per pairing, once with each bot as Black.
+    -   seeding:    every game gets its own seed, derived from the tournament seed, for the bots' random choices
+                    (SimpleBot.setSeed). Bots are created fresh for every game from their factories, so games
+                    on different threads never share a bot.
+    -   threads:    games run on a fixed pool, one game per thread at a time
+    -   results:    per pairing wins/draws/losses and the Elo difference with a 95% margin. With an SPRT set
+                    (Elo bounds elo0/elo1, error rates alpha/beta) each pairing also gets a pass/fail verdict,
+                    and its remaining games are skipped once the verdict is in.
+
+    Usage: java course.reversi.Arena [round-robin|gauntlet] [openings] [threads] [--sprt=elo0,elo1] bots...
+    Bots:  DumbBot, MapleBot, CastellaBot[:depth], MomijiManjuBot
+    e.g.   java course.reversi.Arena gauntlet 50 8 --sprt=0,20 CastellaBot:6 CastellaBot:5
+
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+public class Arena {
+
+    public enum Pairing {
+        ROUND_ROBIN,
+        GAUNTLET
+    }
+
+    public enum Verdict {
+        PASS,       // H1 accepted: the first bot is at least elo1 stronger
+        FAIL,       // H0 accepted: the first bot is at most elo0 stronger
+        UNDECIDED
+    }
+
+    private static final int OPENING_PLIES = 6;
+    private static final int OPENING_SEARCH_DEPTH = 6;
+
+    public static final class Entrant {
+        private final String name;
+        private final Supplier<SimpleBot> factory;
+
+        public Entrant(String name, Supplier<SimpleBot> factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    // one pairing's games, always counted from the first bot's side
+    public static final class Match {
+        private final Entrant first;
+        private final Entrant second;
+        private int wins, draws, losses;
+        private Verdict verdict = Verdict.UNDECIDED;
+
+        Match(Entrant first, Entrant second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        // counts one game by the first bot's final disc margin
+        void record(int firstMargin) {
+            if (firstMargin > 0) wins++;
+            else if (firstMargin < 0) losses++;
+            else draws++;
+        }
+
+        public int games() {
+            return wins + draws + losses;
+        }
+
+        public double score() {
+            return games() == 0 ? 0.5 : (wins + 0.5 * draws) / games();
+        }
+
+        // Elo difference of the first bot over the second
+        public double elo() {
+            return eloFromScore(score());
+        }
+
+        // half width of the 95% interval of elo(), from the spread of the game results
+        public double eloMargin() {
+            int n = games();
+            if (n < 2 || variance() == 0) {
+                return Double.POSITIVE_INFINITY; // all results alike says nothing about the spread yet
+            }
+            double deviation = Math.sqrt(variance() / n);
+            double low = eloFromScore(score() - 1.96 * deviation);
+            double high = eloFromScore(score() + 1.96 * deviation);
+            return (high - low) / 2;
+        }
+
+        private double variance() {
+            double m = score();
+            int n = games();
+            return (wins * (1 - m) * (1 - m) + draws * (0.5 - m) * (0.5 - m) + losses * m * m) / n;
+        }
+
+        public Verdict getVerdict() {
+            return verdict;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-18s vs %-18s +%d =%d -%d  score %.3f  Elo %+.0f +/- %.0f%s",
+                    first.name, second.name, wins, draws, losses, score(), elo(), eloMargin(),
+                    verdict == Verdict.UNDECIDED ? "" : "  SPRT " + verdict);
+        }
+    }
+
+    private final List<Entrant> entrants = new ArrayList<>();
+    private Pairing pairing = Pairing.ROUND_ROBIN;
+    private int openings = 20;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long seed = 1;
+
+    private boolean sprt = false;
+    private double elo0, elo1, alpha = 0.05, beta = 0.05;
+
+    public void add(String name, Supplier<SimpleBot> factory) {
+        entrants.add(new Entrant(name, factory));
+    }
+
+    public void setPairing(Pairing pairing) {
+        this.pairing = pairing;
+    }
+
+    // every opening is played twice per pairing, so a pairing has 2 * openings games
+    public void setOpenings(int openings) {
+        this.openings = Math.max(1, openings);
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    // tests H0: elo <= elo0 against H1: elo >= elo1 for every pairing
+    public void setSprt(double elo0, double elo1, double alpha, double beta) {
+        this.sprt = true;
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        this.alpha = alpha;
+        this.beta = beta;
+    }
+
+    public List<Match> run() {
+        if (entrants.size() < 2) {
+            throw new IllegalStateException("an arena needs at least two bots");
+        }
+
+        List<Match> matches = new ArrayList<>();
+        for (int i = 0; i < entrants.size(); i++) {
+            for (int j = i + 1; j < entrants.size(); j++) {
+                if (pairing == Pairing.GAUNTLET && i > 0) {
+                    break;
+                }
+                matches.add(new Match(entrants.get(i), entrants.get(j)));
+            }
+        }
+
+        List<BitBoard> positions = balancedOpenings(openings, seed);
+        SplittableRandom seeds = new SplittableRandom(seed);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "arena");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            // openings in the outer loop, so every pairing progresses at the same pace and an SPRT can stop early
+            List<Future<?>> games = new ArrayList<>();
+            for (BitBoard opening : positions) {
+                for (Match match : matches) {
+                    for (int swap = 0; swap < 2; swap++) {
+                        boolean firstIsBlack = swap == 0;
+                        long gameSeed = seeds.nextLong();
+                        games.add(pool.submit(() -> playAndRecord(match, opening, firstIsBlack, gameSeed)));
+                    }
+                }
+            }
+            for (Future<?> game : games) {
+                game.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("arena was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("arena game failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        return matches;
+    }
+
+    private void playAndRecord(Match match, BitBoard opening, boolean firstIsBlack, long gameSeed) {
+        synchronized (match) {
+            if (match.verdict != Verdict.UNDECIDED) {
+                return;
+            }
+        }
+
+        SimpleBot first = match.first.factory.get();
+        SimpleBot second = match.second.factory.get();
+        first.setSeed(gameSeed);
+        second.setSeed(gameSeed ^ 0x9E3779B97F4A7C15L);
+        int margin = playGame(opening, firstIsBlack ? first : second, firstIsBlack ? second : first);
+        int firstMargin = firstIsBlack ? margin : -margin;
+
+        synchronized (match) {
+            if (match.verdict != Verdict.UNDECIDED) {
+                return;
+            }
+            match.record(firstMargin);
+            if (sprt) {
+                match.verdict = sprtVerdict(match);
+            }
+        }
+    }
+
+    /*
+
+        Plays one game from the opening position (Black to move) and returns Black's final disc margin.
+        A bot that returns no move or an illegal move while it has legal moves loses by the whole board.
+     */
+    static int playGame(BitBoard opening, SimpleBot black, SimpleBot white) {
+        BitBoard board = opening.copy();
+        black.newGame();
+        white.newGame();
+        char player = Reversi.BLACK;
+
+        while (board.legalMoves(Reversi.BLACK) != 0 || board.legalMoves(Reversi.WHITE) != 0) {
+            if (board.legalMoves(player) != 0) {
+                SimpleBot bot = player == Reversi.BLACK ? black : white;
+                int[] move = bot.chooseMove(board.copy(), player);
+                int square = move == null ? -1 : BitBoard.square(move[0], move[1]);
+                if (move == null || !board.isLegal(square, player)) {
+                    return player == Reversi.BLACK ? -64 : 64;
+                }
+                board.makeMove(square, player);
+            }
+            player = Reversi.getOpponent(player);
+        }
+        return board.count(Reversi.BLACK) - board.count(Reversi.WHITE);
+    }
+
+    /*
+
+        Log-likelihood ratio of elo1 against elo0 in the usual normal approximation of the game results, compared
+        with the bounds log(beta / (1 - alpha)) and log((1 - beta) / alpha).
+     */
+    Verdict sprtVerdict(Match match) {
+        int n = match.games();
+        double variance = match.variance();
+        if (n < 2 || variance == 0) {
+            return Verdict.UNDECIDED;
+        }
+        double s0 = scoreFromElo(elo0);
+        double s1 = scoreFromElo(elo1);
+        double llr = n * (s1 - s0) * (2 * match.score() - s0 - s1) / (2 * variance);
+
+        if (llr >= Math.log((1 - beta) / alpha)) return Verdict.PASS;
+        if (llr <= Math.log(beta / (1 - alpha))) return Verdict.FAIL;
+        return Verdict.UNDECIDED;
+    }
+
+    static double scoreFromElo(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    static double eloFromScore(double score) {
+        double s = Math.min(Math.max(score, 1e-6), 1 - 1e-6);
+        return -400 * Math.log10(1 / s - 1);
+    }
+
+    /*
+
+        Random openings with Black to move, keeping the most level of twice as many candidates. How level an
+        opening is comes from a fixed-depth CastellaBot search from the side to move, also when Black has only
+        one move (getBotMove would play that without a search and leave no score).
+     */
+    static List<BitBoard> balancedOpenings(int count, long seed) {
+        Random random = new Random(seed);
+        int[] moves = new int[32];
+        CastellaBot judge = new CastellaBot(4);
+
+        List<BitBoard> candidates = new ArrayList<>();
+        List<Integer> imbalance = new ArrayList<>();
+        while (candidates.size() < 2 * count) {
+            BitBoard board = new BitBoard();
+            for (int ply = 0; ply < OPENING_PLIES; ply++) {
+                char player = ply % 2 == 0 ? Reversi.BLACK : Reversi.WHITE;
+                int n = board.generateMoves(player, moves);
+                board.makeMove(moves[random.nextInt(n)], player); // nobody runs out of moves this early
+            }
+            if (candidates.stream().anyMatch(c -> c.getBlack() == board.getBlack() && c.getWhite() == board.getWhite())) {
+                continue;
+            }
+            judge.newGame();
+            candidates.add(board);
+            imbalance.add(Math.abs(judge.searchScore(board, Reversi.BLACK, OPENING_SEARCH_DEPTH)));
+        }
+
+        Integer[] order = new Integer[candidates.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(imbalance.get(a), imbalance.get(b)));
+
+        List<BitBoard> openings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            openings.add(candidates.get(order[i]));
+        }
+        return openings;
+    }
+
+    static Supplier<SimpleBot> botFactory(String spec) {
+        String[] parts = spec.split(":");
+        switch (parts[0]) {
+            case "DumbBot":
+                return DumbBot::new;
+            case "MapleBot":
+                return MapleBot::new;
+            case "MomijiManjuBot":
+                return MomijiManjuBot::new;
+            case "CastellaBot":
+                if (parts.length > 1) {
+                    int depth = Integer.parseInt(parts[1]);
+                    return () -> {
+                        CastellaBot bot = new CastellaBot();
+                        bot.setMaxDepth(depth);
+                        bot.setTimeBudget(Long.MAX_VALUE / 2_000_000L); // the depth decides, not the machine's load
+                        return bot;
+                    };
+                }
+                return CastellaBot::new;
+            default:
+                throw new IllegalArgumentException("unknown bot " + spec);
+        }
+    }
+
+    public static void main(String[] args) {
+        Arena arena = new Arena();
+        int position = 0;
+        List<String> bots = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--sprt=")) {
+                String[] bounds = arg.substring("--sprt=".length()).split(",");
+                arena.setSprt(Double.parseDouble(bounds[0]), Double.parseDouble(bounds[1]), 0.05, 0.05);
+            } else if (position == 0 && (arg.equals("round-robin") || arg.equals("gauntlet"))) {
+                arena.setPairing(arg.equals("gauntlet") ? Pairing.GAUNTLET : Pairing.ROUND_ROBIN);
+                position++;
+            } else if (position <= 1 && arg.matches("\\d+")) {
+                arena.setOpenings(Integer.parseInt(arg));
+                position = 2;
+            } else if (position == 2 && arg.matches("\\d+")) {
+                arena.setThreads(Integer.parseInt(arg));
+                position = 3;
+            } else {
+                bots.add(arg);
+                position = 3;
+            }
+        }
+        if (bots.size() < 2) {
+            System.out.println("Usage: java course.reversi.Arena [round-robin|gauntlet] [openings] [threads] [--sprt=elo0,elo1] bots...");
+            return;
+        }
+        for (String bot : bots) {
+            arena.add(bot, botFactory(bot));
+        }
+
+        long start = System.nanoTime();
+        List<Match> results = arena.run();
+        for (Match match : results) {
+            System.out.println(match);
+        }
+        System.out.printf("%d games in %.1f s%n", results.stream().mapToInt(Match::games).sum(),
+                (System.nanoTime() - start) / 1e9);
+    }
+}
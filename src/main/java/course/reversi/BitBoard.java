@@ -0,0 +1,258 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    BitBoard is the board representation used by the engine. Instead of walking a char[][] cell by cell, the
+    position is stored as two 64-bit masks, one per colour. Square A1 is bit 0 and H8 is bit 63, so a square
+    index is simply row * 8 + col.
+
+    Move generation and flipping are done with shifts and masks over all 64 squares at once, and piece counts
+    are a single Long.bitCount. The char[][] routines in Reversi convert to and from this class so the UI can
+    keep working with its array.
+
+ */
+
+public class BitBoard {
+
+    // every column except the A and H files. Used to stop horizontal and diagonal runs from wrapping rows.
+    private static final long INNER_COLUMNS = 0x7E7E7E7E7E7E7E7EL;
+    private static final long NOT_FIRST_COLUMN = 0xFEFEFEFEFEFEFEFEL;
+    private static final long NOT_LAST_COLUMN = 0x7F7F7F7F7F7F7F7FL;
+
+    static final long CORNERS = 0x8100000000000081L;
+
+    long black;
+    long white;
+
+    public BitBoard() {
+        reset();
+    }
+
+    public BitBoard(long black, long white) {
+        this.black = black;
+        this.white = white;
+    }
+
+    // puts the four starting pieces in the middle of an otherwise empty board
+    public void reset() {
+        black = bit(square(3, 4)) | bit(square(4, 3)); // E4, D5
+        white = bit(square(3, 3)) | bit(square(4, 4)); // D4, E5
+    }
+
+    public static int square(int row, int col) {
+        return row * 8 + col;
+    }
+
+    public static long bit(int square) {
+        return 1L << square;
+    }
+
+    public long getBlack() {
+        return black;
+    }
+
+    public long getWhite() {
+        return white;
+    }
+
+    public long discs(char player) {
+        return player == Reversi.BLACK ? black : white;
+    }
+
+    public long empty() {
+        return ~(black | white);
+    }
+
+    public int empties() {
+        return 64 - Long.bitCount(black | white);
+    }
+
+    public int count(char player) {
+        return Long.bitCount(discs(player));
+    }
+
+    public char get(int row, int col) {
+        long b = bit(square(row, col));
+        if ((black & b) != 0) return Reversi.BLACK;
+        if ((white & b) != 0) return Reversi.WHITE;
+        return Reversi.EMPTY;
+    }
+
+    // returns every legal square for the player as a bitmask
+    public long legalMoves(char player) {
+        return player == Reversi.BLACK ? legalMoves(black, white) : legalMoves(white, black);
+    }
+
+    /*
+
+        Writes the legal squares of the player into the caller's array (which needs room for 32 moves, the most
+        a Reversi position can have) and returns how many there are. Nothing is allocated.
+     */
+    public int generateMoves(char player, int[] moves) {
+        return fillMoves(legalMoves(player), moves);
+    }
+
+    public static int fillMoves(long mask, int[] moves) {
+        int count = 0;
+        while (mask != 0) {
+            moves[count++] = Long.numberOfTrailingZeros(mask);
+            mask &= mask - 1;
+        }
+        return count;
+    }
+
+    // letter-number name of a square (e.g., D3). Only meant for the UI and the log files.
+    public static String squareName(int square) {
+        return (char) ('A' + square / 8) + "" + (square % 8 + 1);
+    }
+
+    // the reverse of squareName, returns -1 for anything that is not a square name
+    public static int parseSquare(String name) {
+        if (name.length() != 2) {
+            return -1;
+        }
+        int row = name.charAt(0) - 'A';
+        int col = name.charAt(1) - '1';
+        if (row < 0 || row >= 8 || col < 0 || col >= 8) {
+            return -1;
+        }
+        return square(row, col);
+    }
+
+    public boolean isLegal(int square, char player) {
+        return (legalMoves(player) & bit(square)) != 0;
+    }
+
+    /*
+
+        Places a piece for the player and flips every sandwiched opponent piece. Just like Reversi.makeMove,
+        the piece is placed even when nothing is flipped. Returns the mask of flipped squares, which together
+        with the square is all undoMove needs, so a search can walk the tree on one board without copying it.
+     */
+    public long makeMove(int square, char player) {
+        long placed = bit(square);
+        long flipped;
+        if (player == Reversi.BLACK) {
+            flipped = flips(black, white, square);
+            black |= placed | flipped;
+            white &= ~flipped;
+        } else {
+            flipped = flips(white, black, square);
+            white |= placed | flipped;
+            black &= ~flipped;
+        }
+        return flipped;
+    }
+
+    // takes back a move made by makeMove, given the same square and the flip mask it returned
+    public void undoMove(int square, long flipped, char player) {
+        long placed = bit(square);
+        if (player == Reversi.BLACK) {
+            black &= ~(placed | flipped);
+            white |= flipped;
+        } else {
+            white &= ~(placed | flipped);
+            black |= flipped;
+        }
+    }
+
+    public BitBoard copy() {
+        return new BitBoard(black, white);
+    }
+
+    public void copyFrom(BitBoard other) {
+        this.black = other.black;
+        this.white = other.white;
+    }
+
+    // --- char[][] adapter ---
+
+    public static BitBoard fromArray(char[][] board) {
+        long black = 0, white = 0;
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                if (board[row][col] == Reversi.BLACK) black |= bit(square(row, col));
+                else if (board[row][col] == Reversi.WHITE) white |= bit(square(row, col));
+            }
+        }
+        return new BitBoard(black, white);
+    }
+
+    public void toArray(char[][] board) {
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                board[row][col] = get(row, col);
+            }
+        }
+    }
+
+    public char[][] toArray() {
+        char[][] board = new char[8][8];
+        toArray(board);
+        return board;
+    }
+
+    // --- mask operations ---
+
+    /*
+
+        Legal moves for the side owning p against o. Each direction is a shift amount: 1 is horizontal, 8 is
+        vertical and 7 / 9 are the two diagonals. Left shifts walk towards H8 and right shifts towards A1.
+        A run of opponent pieces can never include the A or H file in a direction that moves sideways, so
+        masking the opponent with INNER_COLUMNS is enough to stop rows from wrapping into each other.
+     */
+    static long legalMoves(long p, long o) {
+        long inner = o & INNER_COLUMNS;
+        long moves = directionMoves(p, inner, 1)
+                | directionMoves(p, o, 8)
+                | directionMoves(p, inner, 7)
+                | directionMoves(p, inner, 9);
+        return moves & ~(p | o);
+    }
+
+    private static long directionMoves(long p, long o, int shift) {
+        long left = (p << shift) & o;
+        long right = (p >>> shift) & o;
+        // a line holds at most six opponent pieces between two of ours
+        for (int i = 0; i < 5; i++) {
+            left |= (left << shift) & o;
+            right |= (right >>> shift) & o;
+        }
+        return (left << shift) | (right >>> shift);
+    }
+
+    // returns the opponent pieces that a piece placed on square would flip
+    static long flips(long p, long o, int square) {
+        long move = bit(square);
+        long inner = o & INNER_COLUMNS;
+        return directionFlips(p, inner, move, 1)
+                | directionFlips(p, o, move, 8)
+                | directionFlips(p, inner, move, 7)
+                | directionFlips(p, inner, move, 9);
+    }
+
+    private static long directionFlips(long p, long o, long move, int shift) {
+        long flipped = 0;
+
+        long left = (move << shift) & o;
+        long right = (move >>> shift) & o;
+        for (int i = 0; i < 5; i++) {
+            left |= (left << shift) & o;
+            right |= (right >>> shift) & o;
+        }
+
+        // the run only flips if it is closed off by one of our pieces
+        if (((left << shift) & p) != 0) flipped |= left;
+        if (((right >>> shift) & p) != 0) flipped |= right;
+        return flipped;
+    }
+
+    // every square next to at least one square in the mask
+    static long neighbours(long mask) {
+        long sideways = ((mask << 1) & NOT_FIRST_COLUMN) | ((mask >>> 1) & NOT_LAST_COLUMN);
+        long row = mask | sideways;
+        return sideways | (row << 8) | (row >>> 8);
+    }
+}
@@ -4,12 +4,26 @@ package course.reversi;
 
     Description:
     CastellaBot is the second-most challenging bot. It uses an advanced game-tree search algorithm to look
-    several moves ahead.
+    several moves ahead. The search deepens one move at a time until its time budget for the move runs out.
+
+    With more than one thread, the extra threads search the same position at the same time (Lazy SMP). They
+    share the transposition table, so what one thread finds saves the others work. Only the thread that
+    owns the search decides the move unless a helper finished a deeper iteration, and with a single
+    thread the result is fully deterministic.
+
+    Once few enough squares are empty, the move is handed to the EndgameSolver, which plays perfectly.
+
+    While the opponent is to move, ponder searches ahead on the positions their replies lead to, so the next
+    getBotMove starts with a filled transposition table.
 
  */
 
+import java.util.ArrayList;
 import java.util.List;
-
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class CastellaBot extends SimpleBot {
 
@@ -24,83 +38,474 @@ public class CastellaBot extends SimpleBot {
             {120, -20, 20, 5, 5, 20, -20, 120}
     };
 
-    private static final int SEARCH_DEPTH = 3; // You can increase for stronger play (3–5)
+    private static final long DEFAULT_TIME_BUDGET_MILLIS = 1000;
+    private static final int MAX_SEARCH_DEPTH = 60; // a game never has more moves left than this
+
+    private static final int DEFAULT_TABLE_MEGABYTES = 16;
+
+    // kept from one move to the next, so positions searched for the previous move are still known
+    private final TranspositionTable table;
+    private char tablePlayer = 0; // scores in the table are from this player's point of view
+
+    private long timeBudgetMillis = DEFAULT_TIME_BUDGET_MILLIS;
+    private int maxDepth = MAX_SEARCH_DEPTH;
+
+    // the worker of the calling thread, plus one helper per extra thread
+    private final SearchWorker mainWorker = new SearchWorker(false);
+    private final List<SearchWorker> helpers = new ArrayList<>();
+    private ExecutorService helperPool = null;
+    private int threads = 1;
+
+    private final EndgameSolver endgameSolver = new EndgameSolver(this::isStopRequested);
+    private int endgameEmpties = EndgameSolver.DEFAULT_EMPTIES;
+
+    // state shared by all workers of the running search
+    private volatile boolean stopped;
+    private long deadline;
+
+    // endgame positions solved while pondering, one per opponent reply
+    private final long[] ponderedBlack = new long[32];
+    private final long[] ponderedWhite = new long[32];
+    private final char[] ponderedPlayers = new char[32];
+    private final int[] ponderedMoves = new int[32];
+    private final int[] ponderedScores = new int[32];
+    private int ponderedCount = 0;
+
+    // results of the last getBotMove call
+    private long lastNodes = 0;
+    private int lastDepth = 0;
+    private int lastScore = 0;
+    private long lastElapsedMillis = 0;
+
+    public CastellaBot() {
+        this(DEFAULT_TABLE_MEGABYTES);
+    }
 
+    public CastellaBot(int tableMegabytes) {
+        this.table = new TranspositionTable(tableMegabytes);
+    }
+
+    // forgets the positions searched so far, e.g. before a new game against a different opponent
     @Override
-    public int[] getBotMove(char[][] board, char player) {
-        List<String> validMoves = Reversi.getValidMoves(board, player);
-        if (validMoves.isEmpty()) {
-            return null;
+    public void newGame() {
+        table.clear();
+        tablePlayer = 0;
+        ponderedCount = 0;
+    }
+
+    // how long a move may take when no deadline is given
+    public void setTimeBudget(long millis) {
+        this.timeBudgetMillis = millis;
+    }
+
+    // the deepest iteration to search, whatever time is left. Together with a long time budget this gives a
+    // fixed-depth search.
+    public void setMaxDepth(int depth) {
+        this.maxDepth = Math.max(1, Math.min(depth, MAX_SEARCH_DEPTH));
+    }
+
+    // number of threads searching each move. 1 (the default) searches on the calling thread only.
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        if (helperPool != null) {
+            helperPool.shutdownNow();
+            helperPool = null;
+        }
+        helpers.clear();
+        for (int i = 1; i < this.threads; i++) {
+            helpers.add(new SearchWorker(true));
         }
+        if (this.threads > 1) {
+            helperPool = Executors.newFixedThreadPool(this.threads - 1, runnable -> {
+                Thread thread = new Thread(runnable, "castella-search");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    // with this many empty squares or fewer the game is solved exactly. 0 turns the solver off.
+    public void setEndgameEmpties(int empties) {
+        this.endgameEmpties = empties;
+    }
+
+    // the move ordering used by the search, its heuristics can be switched on and off one by one
+    public MoveOrdering getMoveOrdering() {
+        return mainWorker.ordering;
+    }
+
+    // number of positions visited by the last getBotMove call, over all threads
+    public long getLastNodeCount() {
+        return lastNodes;
+    }
 
-        int bestScore = Integer.MIN_VALUE;
-        String bestMove = validMoves.get(0);
+    // depth of the deepest iteration the last getBotMove call completed
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    public int getLastScore() {
+        return lastScore;
+    }
 
-        for (String move : validMoves) {
-            int[] coords = convertMove(move);
-            char[][] simulated = Reversi.copyBoard(board);
-            Reversi.makeMove(simulated, coords[0], coords[1], player);
+    public long getLastElapsedMillis() {
+        return lastElapsedMillis;
+    }
+
+    @Override
+    public int[] getBotMove(BitBoard board, char player) {
+        return getBotMove(board, player, System.nanoTime() + timeBudgetMillis * 1_000_000L);
+    }
 
-            int score = minimax(simulated, SEARCH_DEPTH - 1, false, player, Reversi.getOpponent(player), Integer.MIN_VALUE, Integer.MAX_VALUE);
+    /*
 
-            if (score > bestScore) {
-                bestScore = score;
-                bestMove = move;
+        Iterative deepening: the position is searched to depth 1, then 2, and so on until the deadline
+        (a System.nanoTime value) passes or maxDepth is reached. The move returned is the best move of the
+        deepest iteration that finished. Each iteration starts with the best move of the one before, and the
+        transposition table hands the rest of that line down to the deeper nodes.
+     */
+    @Override
+    public int[] getBotMove(BitBoard board, char player, long deadlineNanos) {
+        long start = System.nanoTime();
+        long validMoves = board.legalMoves(player);
+        if (validMoves == 0) {
+            return null;
+        }
+
+        if (board.empties() <= endgameEmpties) {
+            int pondered = findPonderedSolve(board, player);
+            int move = pondered >= 0 ? ponderedMoves[pondered] : endgameSolver.solve(board, player, deadlineNanos);
+            if (move >= 0) {
+                lastNodes = pondered >= 0 ? 0 : endgameSolver.getLastNodeCount();
+                lastDepth = board.empties();
+                lastScore = pondered >= 0 ? ponderedScores[pondered] : endgameSolver.getLastScore();
+                lastElapsedMillis = (System.nanoTime() - start) / 1_000_000;
+                if (Trace.SEARCH.isEnabled(Trace.DEBUG)) {
+                    Trace.SEARCH.log(Trace.DEBUG, "CastellaBot " + player + " solved " + BitBoard.squareName(move)
+                            + " (final margin " + lastScore + ", " + lastNodes + " nodes, " + lastElapsedMillis + " ms"
+                            + (pondered >= 0 ? ", pondered" : "") + ")");
+                }
+                return toMove(move);
             }
+            // the solve ran out of time, the normal search still gives a move
         }
 
-        return convertMove(bestMove);
+        if (Long.bitCount(validMoves) == 1) {
+            // nothing to choose, so nothing to search
+            lastNodes = 0;
+            lastDepth = 0;
+            lastScore = 0;
+            lastElapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            return toMove(Long.numberOfTrailingZeros(validMoves));
+        }
+
+        table.newSearch();
+        // searching past the end of the game cannot change anything
+        SearchWorker best = search(board, player, validMoves, 1, Math.min(maxDepth, board.empties()), deadlineNanos);
+
+        lastNodes = mainWorker.nodes;
+        for (SearchWorker helper : helpers) {
+            lastNodes += helper.nodes;
+        }
+        lastDepth = best.completedDepth;
+        lastScore = best.bestScore;
+        lastElapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        if (Trace.SEARCH.isEnabled(Trace.DEBUG)) {
+            Trace.SEARCH.log(Trace.DEBUG, "CastellaBot " + player + " plays " + BitBoard.squareName(best.bestMove) + " (score " + lastScore
+                    + ", depth " + lastDepth + ", " + lastNodes + " nodes, " + threads + " threads, " + lastElapsedMillis + " ms)");
+        }
+
+        return toMove(best.bestMove);
     }
 
-    private int minimax(char[][] board, int depth, boolean maximizing, char player, char opponent, int alpha, int beta) {
-        if (depth == 0) {
-            return evaluateBoard(board, player);
+    // one iterative deepening search of the position on all threads, from firstDepth on (the depths below it were
+    // searched by an earlier call and are in the table). Returns the worker whose move counts.
+    private SearchWorker search(BitBoard board, char player, long validMoves, int firstDepth, int depthLimit,
+                                long deadlineNanos) {
+        // the stored scores only make sense for the player they were searched for
+        if (player != tablePlayer) {
+            table.clear();
+            tablePlayer = player;
         }
+        stopped = false;
+        deadline = deadlineNanos;
+
+        int fallback = Long.numberOfTrailingZeros(validMoves);
+
+        SearchWorker best = mainWorker;
 
-        List<String> validMoves = Reversi.getValidMoves(board, maximizing ? player : opponent);
-        if (validMoves.isEmpty()) {
-            return evaluateBoard(board, player);
+        // helpers start on odd depths every other thread, so the threads spread over two iterations
+        List<Future<?>> running = new ArrayList<>();
+        for (int i = 0; i < helpers.size(); i++) {
+            SearchWorker helper = helpers.get(i);
+            helper.ordering.copySettingsFrom(mainWorker.ordering);
+            helper.prepare(board, player, fallback, firstDepth);
+            int helperDepth = firstDepth + (i % 2);
+            running.add(helperPool.submit(() -> helper.iterate(helperDepth, depthLimit)));
         }
 
-        int bestScore = maximizing ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        mainWorker.prepare(board, player, fallback, firstDepth);
+        mainWorker.iterate(firstDepth, depthLimit);
 
-        for (String move : validMoves) {
-            int[] coords = convertMove(move);
-            char[][] simulated = Reversi.copyBoard(board);
-            Reversi.makeMove(simulated, coords[0], coords[1], maximizing ? player : opponent);
+        stopped = true;
+        for (Future<?> future : running) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("CastellaBot search thread failed", e.getCause());
+            }
+        }
+
+        for (SearchWorker helper : helpers) {
+            if (helper.completedDepth > best.completedDepth) {
+                best = helper;
+            }
+        }
+        return best;
+    }
+
+    // the score of the position for the player from a search of exactly this depth (the endgame solver is not
+    // used), also when there is only one move. The player must have a move.
+    public int searchScore(BitBoard board, char player, int depth) {
+        table.newSearch();
+        long validMoves = board.legalMoves(player);
+        return search(board, player, validMoves, 1, Math.max(1, Math.min(depth, board.empties())), Long.MAX_VALUE).bestScore;
+    }
+
+    /*
 
-            int score = minimax(simulated, depth - 1, !maximizing, player, opponent, alpha, beta);
+        Pondering: while the opponent thinks, the positions each of their replies leads to are searched round
+        robin, one depth deeper every round, until stop is called. A round only searches its own depth, the
+        shallower ones are in the table from the rounds before. All of it stays in the transposition table,
+        so when the reply that is played comes up, getBotMove finds the best moves and bounds of the first
+        iterations already there and gets through them almost for free. Replies that leave few enough empty
+        squares are solved outright and the move is kept until the next getBotMove.
+     */
+    @Override
+    public void ponder(BitBoard board, char opponent) {
+        char player = Reversi.getOpponent(opponent);
+        ponderedCount = 0;
 
-            if (maximizing) {
-                bestScore = Math.max(bestScore, score);
-                alpha = Math.max(alpha, score);
-            } else {
-                bestScore = Math.min(bestScore, score);
-                beta = Math.min(beta, score);
+        List<BitBoard> children = new ArrayList<>();
+        int[] replies = new int[32];
+        int n = board.generateMoves(opponent, replies);
+        if (n == 0) {
+            children.add(board.copy()); // the opponent has to pass, the bot moves again in this same position
+        }
+        for (int i = 0; i < n; i++) {
+            BitBoard child = board.copy();
+            child.makeMove(replies[i], opponent);
+            children.add(child);
+        }
+        children.removeIf(child -> child.legalMoves(player) == 0);
+
+        table.newSearch();
+        boolean searched = true;
+        for (int depth = 1; depth <= maxDepth && searched; depth++) {
+            searched = false;
+            for (BitBoard child : children) {
+                if (isStopRequested()) {
+                    return;
+                }
+                if (child.empties() <= endgameEmpties) {
+                    if (depth == 1) {
+                        solveWhilePondering(child, player);
+                    }
+                } else if (depth <= child.empties()) {
+                    search(child, player, child.legalMoves(player), depth, depth, Long.MAX_VALUE);
+                    searched = true;
+                }
             }
+        }
+    }
 
-            if (beta <= alpha) break; // Alpha-beta pruning
+    private void solveWhilePondering(BitBoard board, char player) {
+        int move = endgameSolver.solve(board, player, Long.MAX_VALUE);
+        if (move < 0 || ponderedCount == ponderedMoves.length) {
+            return; // stopped before the solve finished
         }
+        ponderedBlack[ponderedCount] = board.getBlack();
+        ponderedWhite[ponderedCount] = board.getWhite();
+        ponderedPlayers[ponderedCount] = player;
+        ponderedMoves[ponderedCount] = move;
+        ponderedScores[ponderedCount] = endgameSolver.getLastScore();
+        ponderedCount++;
+    }
 
-        return bestScore;
+    private int findPonderedSolve(BitBoard board, char player) {
+        for (int i = 0; i < ponderedCount; i++) {
+            if (ponderedBlack[i] == board.getBlack() && ponderedWhite[i] == board.getWhite() && ponderedPlayers[i] == player) {
+                return i;
+            }
+        }
+        return -1;
     }
 
-    private int evaluateBoard(char[][] board, char player) {
-        char opponent = Reversi.getOpponent(player);
-        int playerCount = Reversi.countPieces(board, player);
-        int opponentCount = Reversi.countPieces(board, opponent);
+    /*
+
+        The search of one thread. Each worker walks the tree on its own copy of the board with its own move
+        ordering, and only the transposition table is shared.
+     */
+    private class SearchWorker {
+        private final boolean helper;
+        private final MoveOrdering ordering = new MoveOrdering(POSITION_WEIGHTS);
+        private final EvalBoard position = new EvalBoard(POSITION_WEIGHTS);
+
+        private char player;
+        private char opponent;
+        private long rootHash;
+
+        private long nodes;
+        private boolean aborted;
 
-        int mobility = Reversi.getValidMoves(board, player).size() - Reversi.getValidMoves(board, opponent).size();
-        int positionScore = 0;
+        // result of the deepest finished iteration
+        private int completedDepth;
+        private int bestMove;
+        private int bestScore;
 
-        for (int i = 0; i < 8; i++) {
-            for (int j = 0; j < 8; j++) {
-                if (board[i][j] == player) positionScore += POSITION_WEIGHTS[i][j];
-                else if (board[i][j] == opponent) positionScore -= POSITION_WEIGHTS[i][j];
+        SearchWorker(boolean helper) {
+            this.helper = helper;
+        }
+
+        // the depths below firstDepth count as done, so only a search from depth 1 has to finish its first iteration
+        void prepare(BitBoard board, char player, int fallbackMove, int firstDepth) {
+            position.copyFrom(board);
+            this.player = player;
+            this.opponent = Reversi.getOpponent(player);
+            this.rootHash = Zobrist.hash(position, player);
+            ordering.newSearch();
+            nodes = 0;
+            aborted = false;
+            completedDepth = firstDepth - 1;
+            bestMove = fallbackMove;
+            bestScore = 0;
+        }
+
+        void iterate(int firstDepth, int depthLimit) {
+            long validMoves = position.legalMoves(player);
+            for (int depth = firstDepth; depth <= depthLimit && !aborted; depth++) {
+                searchRoot(validMoves, depth);
             }
         }
 
+        // searches every root move to the given depth, starting with the best move so far
+        private void searchRoot(long validMoves, int depth) {
+            int iterationScore = Integer.MIN_VALUE;
+            int iterationMove = bestMove;
+
+            int count = ordering.score(position, validMoves, player, 0, depth, bestMove);
+            for (int i = 0; i < count; i++) {
+                int move = ordering.next(0, i, count);
+
+                long flipped = position.makeMove(move, player);
+                long childHash = rootHash ^ Zobrist.moveKey(move, flipped, player);
+                // moves that cannot beat the best score so far only need to be proven worse, not scored exactly
+                int score = minimax(childHash, depth - 1, 1, false, iterationScore, Integer.MAX_VALUE);
+                position.undoMove(move, flipped, player);
+
+                // the first iteration of the main worker always finishes so that there is a move to fall back on
+                if (aborted) {
+                    return;
+                }
+
+                if (score > iterationScore) {
+                    iterationScore = score;
+                    iterationMove = move;
+                }
+            }
+
+            completedDepth = depth;
+            bestMove = iterationMove;
+            bestScore = iterationScore;
+        }
+
+        private int minimax(long hash, int depth, int ply, boolean maximizing, int alpha, int beta) {
+            // the clock is only looked at every 1024 nodes
+            if ((++nodes & 1023) == 0 && (helper || completedDepth > 0) && (stopped || isStopRequested() || System.nanoTime() > deadline)) {
+                aborted = true;
+            }
+            if (aborted) {
+                return 0;
+            }
+
+            if (depth == 0) {
+                return evaluateBoard(position, player);
+            }
+
+            // a stored result of at least this depth can end the search of this position right away
+            int hashMove = TranspositionTable.NO_MOVE;
+            long entry = table.probe(hash);
+            if (entry != 0) {
+                hashMove = TranspositionTable.move(entry);
+                if (TranspositionTable.depth(entry) >= depth) {
+                    int stored = TranspositionTable.score(entry);
+                    int bound = TranspositionTable.bound(entry);
+                    if (bound == TranspositionTable.EXACT
+                            || (bound == TranspositionTable.LOWER && stored >= beta)
+                            || (bound == TranspositionTable.UPPER && stored <= alpha)) {
+                        return stored;
+                    }
+                }
+            }
+
+            char mover = maximizing ? player : opponent;
+            long validMoves = position.legalMoves(mover);
+            if (validMoves == 0) {
+                return evaluateBoard(position, player);
+            }
+
+            int alphaStart = alpha, betaStart = beta;
+            int bestScore = maximizing ? Integer.MIN_VALUE : Integer.MAX_VALUE;
+            int bestMove = TranspositionTable.NO_MOVE;
+
+            // likely good moves first (see MoveOrdering), so the cutoff below happens as early as possible
+            int count = ordering.score(position, validMoves, mover, ply, depth, hashMove);
+            for (int i = 0; i < count; i++) {
+                int move = ordering.next(ply, i, count);
+
+                long flipped = position.makeMove(move, mover);
+                int score = minimax(hash ^ Zobrist.moveKey(move, flipped, mover), depth - 1, ply + 1, !maximizing, alpha, beta);
+                position.undoMove(move, flipped, mover);
+
+                if (aborted) {
+                    return 0; // the scores of an unfinished search must not reach the table
+                }
+
+                if (maximizing ? score > bestScore : score < bestScore) {
+                    bestScore = score;
+                    bestMove = move;
+                }
+                if (maximizing) {
+                    alpha = Math.max(alpha, score);
+                } else {
+                    beta = Math.min(beta, score);
+                }
+
+                if (beta <= alpha) {
+                    ordering.cutoff(move, mover, ply, depth);
+                    break; // Alpha-beta pruning
+                }
+            }
+
+            int bound = bestScore <= alphaStart ? TranspositionTable.UPPER
+                    : bestScore >= betaStart ? TranspositionTable.LOWER
+                    : TranspositionTable.EXACT;
+            table.store(hash, depth, bound, bestScore, bestMove);
+
+            return bestScore;
+        }
+    }
+
+    // reads its terms from the EvalBoard, only the mobility still needs a move generation
+    private int evaluateBoard(EvalBoard board, char player) {
         // Weighted evaluation
-        return (10 * (playerCount - opponentCount)) + (5 * mobility) + positionScore;
+        return (10 * board.pieceDifference(player)) + (5 * board.mobilityDifference(player)) + board.positionalDifference(player);
     }
-}
\ No newline at end of file
+}
@@ -7,23 +7,30 @@ package course.reversi;
 
     A basic strategic bot. It prioritizes corner positions (A1, A8, H1, H8) due to their high value.
     If no corner is available, it makes a random move.
+    The random moves come from its own generator, which can be seeded so games can be replayed.
 
  */
 
 
-import java.util.List;
 import java.util.Random;
 
 public class DumbBot extends SimpleBot {
 
+    private final int[] moves = new int[32]; // reused between calls so picking a move allocates nothing
+    private final Random random = new Random();
+
+    @Override
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
 
     @Override
     // defines its own strategy for getBotMove
-    public int[] getBotMove(char[][] board, char player) {
+    public int[] getBotMove(BitBoard board, char player) {
         // get valid moves
-        List<String> validMoves = Reversi.getValidMoves(board, player);
+        int count = board.generateMoves(player, moves);
 
-        if (validMoves.isEmpty()) {
+        if (count == 0) {
             return null; // No valid moves
         }
 
@@ -35,7 +42,7 @@ public class DumbBot extends SimpleBot {
         //}
 
         // if not possible, choose a random piece
-        String move = validMoves.get((int) (Math.random() * validMoves.size()));
-        return convertMove(move);
+        int move = moves[random.nextInt(count)];
+        return toMove(move);
     }
 }
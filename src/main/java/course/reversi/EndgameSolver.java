@@ -0,0 +1,238 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    EndgameSolver plays the last part of the game perfectly. Once only a handful of squares are empty the whole
+    remaining tree can be searched, so instead of a heuristic score every line is played to the end and scored
+    by the final disc differential (empty squares count for the winner).
+
+    The search is a negamax with alpha-beta working directly on the two disc masks. It can either find the
+    exact differential or, with the narrow window of solveWinLossDraw, only whether the position is a win,
+    loss or draw, which is much faster. Move ordering depends on how many squares are left:
+
+    -   many empties:   fastest first, moves that leave the opponent the fewest replies go first
+    -   few empties:    parity, moves in a quadrant with an odd number of empties go first (the player who
+                        moves last in a region usually gains there)
+    -   one empty:      no search at all, the last move is counted directly
+
+    A deadline can be given. When it passes (or the stop condition the solver was made with turns true) the
+    solve is given up and -1 is returned, so the caller can fall back to its normal search.
+
+ */
+
+import java.util.function.BooleanSupplier;
+
+public class EndgameSolver {
+
+    public static final int DEFAULT_EMPTIES = 14;
+
+    // below this many empties the cost of counting replies is more than what it saves
+    private static final int FASTEST_FIRST_EMPTIES = 7;
+
+    private static final long[] QUADRANTS = {
+            0x000000000F0F0F0FL, 0x00000000F0F0F0F0L, 0x0F0F0F0F00000000L, 0xF0F0F0F000000000L
+    };
+
+    private long nodes;
+    private long deadline;
+    private boolean aborted;
+    private int lastScore;
+
+    // the moves of a fastest-first node with their reply counts, one row per number of empties. A pass keeps
+    // the number of empties, but the node that passes has no moves of its own to keep in its row.
+    private final int[][] orderedMoves = new int[65][32];
+    private final int[][] orderedReplies = new int[65][32];
+
+    // looked at along with the clock, a bot passes its own isStopRequested so the solve ends with its search
+    private final BooleanSupplier stopCondition;
+
+    public EndgameSolver() {
+        this(() -> false);
+    }
+
+    public EndgameSolver(BooleanSupplier stopCondition) {
+        this.stopCondition = stopCondition;
+    }
+
+    public long getLastNodeCount() {
+        return nodes;
+    }
+
+    // the result of the last solve from the solving player's point of view: the disc differential, or for a
+    // win/loss/draw solve 1, 0 or -1
+    public int getLastScore() {
+        return lastScore;
+    }
+
+    // returns the best square for the player, or -1 if there is no move or the deadline passed first
+    public int solve(BitBoard board, char player, long deadlineNanos) {
+        return solve(board, player, -64, 64, deadlineNanos);
+    }
+
+    // only tells wins, draws and losses apart, any move that keeps the best of the three is returned
+    public int solveWinLossDraw(BitBoard board, char player, long deadlineNanos) {
+        return solve(board, player, -1, 1, deadlineNanos);
+    }
+
+    private int solve(BitBoard board, char player, int alpha, int beta, long deadlineNanos) {
+        long p = board.discs(player);
+        long o = board.discs(Reversi.getOpponent(player));
+        long moves = BitBoard.legalMoves(p, o);
+        if (moves == 0) {
+            return -1;
+        }
+
+        nodes = 0;
+        deadline = deadlineNanos;
+        aborted = false;
+
+        int bestMove = Long.numberOfTrailingZeros(moves);
+        int bestScore = -65;
+        int empties = Long.bitCount(~(p | o));
+
+        boolean fastest = empties > FASTEST_FIRST_EMPTIES;
+        int count = fastest ? countReplies(p, o, moves, orderedMoves[empties], orderedReplies[empties]) : 0;
+        for (int i = 0; moves != 0; i++) {
+            int move = fastest ? pickFastest(orderedMoves[empties], orderedReplies[empties], i, count) : parityFirst(~(p | o), moves);
+            moves &= ~BitBoard.bit(move);
+
+            long flipped = BitBoard.flips(p, o, move);
+            int score = -search(o & ~flipped, p | flipped | BitBoard.bit(move), -beta, -Math.max(alpha, bestScore), false);
+            if (aborted) {
+                return -1;
+            }
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = move;
+                if (bestScore >= beta) {
+                    break;
+                }
+            }
+        }
+
+        // fail-soft scores can fall outside the window, a win/loss/draw solve still reports 1, 0 or -1
+        lastScore = Math.max(alpha, Math.min(beta, bestScore));
+        return bestMove;
+    }
+
+    // negamax score of the side owning p, to move
+    private int search(long p, long o, int alpha, int beta, boolean passed) {
+        if ((++nodes & 4095) == 0 && (System.nanoTime() > deadline || stopCondition.getAsBoolean())) {
+            aborted = true;
+        }
+        if (aborted) {
+            return 0;
+        }
+
+        long empty = ~(p | o);
+        int empties = Long.bitCount(empty);
+        if (empties == 1) {
+            return lastMove(p, o, Long.numberOfTrailingZeros(empty));
+        }
+
+        long moves = BitBoard.legalMoves(p, o);
+        if (moves == 0) {
+            if (passed) {
+                return finalScore(p, o);
+            }
+            return -search(o, p, -beta, -alpha, true);
+        }
+
+        boolean fastest = empties > FASTEST_FIRST_EMPTIES;
+        int count = fastest ? countReplies(p, o, moves, orderedMoves[empties], orderedReplies[empties]) : 0;
+
+        int bestScore = -65;
+        for (int i = 0; moves != 0; i++) {
+            int move = fastest ? pickFastest(orderedMoves[empties], orderedReplies[empties], i, count) : parityFirst(empty, moves);
+            moves &= ~BitBoard.bit(move);
+
+            long flipped = BitBoard.flips(p, o, move);
+            int score = -search(o & ~flipped, p | flipped | BitBoard.bit(move), -beta, -alpha, false);
+
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        return bestScore;
+    }
+
+    // one square left: whoever can play it does, otherwise the game is over as it stands
+    private int lastMove(long p, long o, int square) {
+        nodes++;
+        int diff = Long.bitCount(p) - Long.bitCount(o);
+
+        long flipped = BitBoard.flips(p, o, square);
+        if (flipped != 0) {
+            return diff + 1 + 2 * Long.bitCount(flipped);
+        }
+        flipped = BitBoard.flips(o, p, square);
+        if (flipped != 0) {
+            return diff - 1 - 2 * Long.bitCount(flipped);
+        }
+        // 63 discs on the board, so the differential is odd and the empty square goes to the winner
+        return diff > 0 ? diff + 1 : diff - 1;
+    }
+
+    private static int finalScore(long p, long o) {
+        int diff = Long.bitCount(p) - Long.bitCount(o);
+        int empties = Long.bitCount(~(p | o));
+        if (diff > 0) return diff + empties;
+        if (diff < 0) return diff - empties;
+        return 0;
+    }
+
+    // lists the moves with the opponent's replies after each, corners count as one reply less
+    private static int countReplies(long p, long o, long moves, int[] list, int[] replies) {
+        int count = 0;
+        while (moves != 0) {
+            int move = Long.numberOfTrailingZeros(moves);
+            moves &= moves - 1;
+
+            long flipped = BitBoard.flips(p, o, move);
+            long after = BitBoard.legalMoves(o & ~flipped, p | flipped | BitBoard.bit(move));
+            int replyCount = Long.bitCount(after) + Long.bitCount(after & BitBoard.CORNERS);
+            if ((BitBoard.bit(move) & BitBoard.CORNERS) != 0) {
+                replyCount--;
+            }
+            list[count] = move;
+            replies[count] = replyCount;
+            count++;
+        }
+        return count;
+    }
+
+    // selection sort one step at a time: the move with the fewest replies among list[from..count) is swapped
+    // to list[from] and returned. Ties go to the lower square, so the order is the same as sorting up front.
+    private static int pickFastest(int[] list, int[] replies, int from, int count) {
+        int best = from;
+        for (int i = from + 1; i < count; i++) {
+            if (replies[i] < replies[best] || (replies[i] == replies[best] && list[i] < list[best])) {
+                best = i;
+            }
+        }
+        int move = list[best];
+        list[best] = list[from];
+        replies[best] = replies[from];
+        list[from] = move;
+        return move;
+    }
+
+    // the first move that lies in a quadrant with an odd number of empties, or else the first move
+    private static int parityFirst(long empty, long moves) {
+        for (long quadrant : QUADRANTS) {
+            if ((Long.bitCount(empty & quadrant) & 1) == 1 && (moves & quadrant) != 0) {
+                return Long.numberOfTrailingZeros(moves & quadrant);
+            }
+        }
+        return Long.numberOfTrailingZeros(moves);
+    }
+}
@@ -0,0 +1,118 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    EvalBoard is a BitBoard that also keeps the terms the evaluation functions need, so a bot can read them at
+    a leaf without scanning the 64 squares:
+
+    -   positional sum:     the sum of a square weight table over each colour's pieces. Kept up to date from the
+                            placed square and the flip mask of every move, and taken back the same way on undo.
+    -   piece counts:       a popcount of each colour's mask
+    -   corners:            a popcount of each colour's mask on the four corners
+    -   frontier discs:     pieces next to an empty square, one mask expansion of the empty squares
+
+    Only the positional sum needs bookkeeping, the other terms are already constant time on the masks.
+
+ */
+
+public class EvalBoard extends BitBoard {
+
+    private final int[] squareWeights = new int[64];
+    private int blackPositional;
+    private int whitePositional;
+
+    // a board without square weights, for bots that only need the counts
+    public EvalBoard() {
+        this(new int[8][8]);
+    }
+
+    public EvalBoard(int[][] positionWeights) {
+        super();
+        for (int square = 0; square < 64; square++) {
+            squareWeights[square] = positionWeights[square / 8][square % 8];
+        }
+        recompute();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        recompute();
+    }
+
+    @Override
+    public void copyFrom(BitBoard other) {
+        super.copyFrom(other);
+        recompute();
+    }
+
+    @Override
+    public long makeMove(int square, char player) {
+        long flipped = super.makeMove(square, player);
+        int flippedWeight = weightOf(flipped);
+        if (player == Reversi.BLACK) {
+            blackPositional += squareWeights[square] + flippedWeight;
+            whitePositional -= flippedWeight;
+        } else {
+            whitePositional += squareWeights[square] + flippedWeight;
+            blackPositional -= flippedWeight;
+        }
+        return flipped;
+    }
+
+    @Override
+    public void undoMove(int square, long flipped, char player) {
+        super.undoMove(square, flipped, player);
+        int flippedWeight = weightOf(flipped);
+        if (player == Reversi.BLACK) {
+            blackPositional -= squareWeights[square] + flippedWeight;
+            whitePositional += flippedWeight;
+        } else {
+            whitePositional -= squareWeights[square] + flippedWeight;
+            blackPositional += flippedWeight;
+        }
+    }
+
+    // full recount, only needed when the whole position is replaced. The constructor of BitBoard calls
+    // reset() before the weight table exists, which is why an empty table is tolerated here.
+    private void recompute() {
+        if (squareWeights == null) {
+            return;
+        }
+        blackPositional = weightOf(black);
+        whitePositional = weightOf(white);
+    }
+
+    private int weightOf(long squares) {
+        int sum = 0;
+        while (squares != 0) {
+            sum += squareWeights[Long.numberOfTrailingZeros(squares)];
+            squares &= squares - 1;
+        }
+        return sum;
+    }
+
+    // --- evaluation terms, all from the given player's point of view ---
+
+    public int positionalDifference(char player) {
+        return player == Reversi.BLACK ? blackPositional - whitePositional : whitePositional - blackPositional;
+    }
+
+    public int pieceDifference(char player) {
+        return Long.bitCount(discs(player)) - Long.bitCount(discs(Reversi.getOpponent(player)));
+    }
+
+    public int cornerDifference(char player) {
+        return Long.bitCount(discs(player) & CORNERS) - Long.bitCount(discs(Reversi.getOpponent(player)) & CORNERS);
+    }
+
+    public int frontierDiscs(char player) {
+        return Long.bitCount(discs(player) & neighbours(empty()));
+    }
+
+    public int mobilityDifference(char player) {
+        return Long.bitCount(legalMoves(player)) - Long.bitCount(legalMoves(Reversi.getOpponent(player)));
+    }
+}
@@ -0,0 +1,363 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    GameAnalyzer goes through played games (text logs, game archives, or folders holding either), replays
+    each one and annotates every move with CastellaBot's opinion of it: the score of the move played, the best
+    move and its score, and the loss between the two. Big losses are flagged as blunders. At the end it prints
+    the loss statistics of every player, taken from the game mode ("Human vs MapleBot": Human is Black,
+    MapleBot is White).
+
+    -   scores:     a fixed-depth search, in CastellaBot's evaluation units (10 per disc, a corner is worth
+                    about 120). With few enough empty squares the positions are solved exactly instead and the
+                    scores are final disc margins, so the statistics keep the two apart.
+    -   threads:    one thread reads the games, a pool of workers analyses them. The reader can only run a
+                    few games ahead of the workers, so memory does not grow with the size of the input.
+    -   output:     tab separated, one line per move, written as soon as a game is done. Games come out in the
+                    order they finish, the first column tells which game a line belongs to.
+
+    Usage: java course.reversi.GameAnalyzer <out.tsv> [--threads=N] [--depth=D] <logs, archives or folders...>
+
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+public class GameAnalyzer {
+
+    public static final String HEADER = "game\tply\tplayer\tmove\tscore\tbest\tbest_score\tloss\tnote";
+
+    private static final int DEFAULT_DEPTH = 6;
+    private static final int BLUNDER_SCORE = 100; // about a corner given away
+    private static final int BLUNDER_DISCS = 8;
+    private static final int QUEUED_GAMES_PER_THREAD = 4;
+
+    private int depth = DEFAULT_DEPTH;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int endgameEmpties = EndgameSolver.DEFAULT_EMPTIES;
+
+    private final Map<String, PlayerStats> stats = new TreeMap<>();
+    private int gamesAnalyzed = 0;
+    private IOException writeFailure = null; // the workers keep taking games after it, so the reader never blocks
+
+    public static final class PlayerStats {
+        private int games;
+        private int moves;
+        private int searchedMoves;
+        private long searchedLoss;
+        private int solvedMoves;
+        private long solvedLoss;
+        private int blunders;
+
+        private void add(PlayerStats other) {
+            games += other.games;
+            moves += other.moves;
+            searchedMoves += other.searchedMoves;
+            searchedLoss += other.searchedLoss;
+            solvedMoves += other.solvedMoves;
+            solvedLoss += other.solvedLoss;
+            blunders += other.blunders;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%5d games %6d moves  mean loss %6.1f (search) %5.2f discs (solved)  %5d blunders",
+                    games, moves, searchedMoves == 0 ? 0.0 : (double) searchedLoss / searchedMoves,
+                    solvedMoves == 0 ? 0.0 : (double) solvedLoss / solvedMoves, blunders);
+        }
+    }
+
+    // a game waiting for a worker, source names it in the output
+    private static final class Task {
+        private static final Task END = new Task(null, null);
+
+        private final String source;
+        private final GameArchive.Game game;
+
+        private Task(String source, GameArchive.Game game) {
+            this.source = source;
+            this.game = game;
+        }
+    }
+
+    public void setDepth(int depth) {
+        this.depth = Math.max(2, depth);
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    // with this many empty squares or fewer the positions are solved. 0 turns the solver off.
+    public void setEndgameEmpties(int empties) {
+        this.endgameEmpties = empties;
+    }
+
+    public Map<String, PlayerStats> getStats() {
+        return stats;
+    }
+
+    /*
+
+        Analyses every game found in the inputs and writes the annotated moves to out, starting with HEADER.
+        Statistics add up over calls.
+     */
+    public void analyze(List<Path> inputs, Writer out) throws IOException {
+        out.write(HEADER + "\n");
+
+        BlockingQueue<Task> queue = new ArrayBlockingQueue<>(threads * QUEUED_GAMES_PER_THREAD);
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "game-analyzer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(pool.submit(() -> work(queue, out)));
+        }
+
+        try {
+            for (Path input : inputs) {
+                if (Files.isDirectory(input)) {
+                    try (Stream<Path> files = Files.walk(input)) {
+                        for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                            read(file, queue);
+                        }
+                    }
+                } else {
+                    read(input, queue);
+                }
+            }
+            for (int i = 0; i < threads; i++) {
+                queue.put(Task.END);
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while analysing games", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("game analysis failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        if (writeFailure != null) {
+            throw writeFailure;
+        }
+        out.flush();
+    }
+
+    // queues the games of one file, waiting whenever the workers are behind
+    private void read(Path file, BlockingQueue<Task> queue) throws IOException, InterruptedException {
+        String name = file.getFileName().toString();
+        if (name.endsWith(".txt")) {
+            List<GameArchive.Game> games = GameArchive.readLog(file);
+            for (int game = 0; game < games.size(); game++) {
+                queue.put(new Task(games.size() == 1 ? file.toString() : file + "#" + game, games.get(game)));
+            }
+        } else if (Files.exists(GameArchive.indexFile(file))) {
+            GameArchive.Reader reader = GameArchive.Reader.open(file);
+            for (int game = 0; game < reader.size(); game++) {
+                queue.put(new Task(file + "#" + game, reader.getGame(game)));
+            }
+        }
+    }
+
+    private Void work(BlockingQueue<Task> queue, Writer out) throws InterruptedException {
+        CastellaBot[] bots = new CastellaBot[2];   // one per colour, so each keeps its table between moves
+        for (int i = 0; i < 2; i++) {
+            bots[i] = new CastellaBot();
+            bots[i].setMaxDepth(depth);
+            bots[i].setEndgameEmpties(0);
+        }
+        EndgameSolver solver = new EndgameSolver();
+
+        while (true) {
+            Task task = queue.take();
+            if (task == Task.END) {
+                return null;
+            }
+            StringBuilder lines = new StringBuilder();
+            Map<String, PlayerStats> gameStats = new TreeMap<>();
+            try {
+                annotate(task, bots, solver, lines, gameStats);
+            } catch (RuntimeException e) {
+                lines.append("# ").append(task.source).append(": analysis failed, ").append(e).append('\n');
+                gameStats.clear();
+            }
+
+            synchronized (this) {
+                if (writeFailure != null) {
+                    continue;
+                }
+                try {
+                    out.write(lines.toString());
+                } catch (IOException e) {
+                    writeFailure = e;
+                    continue;
+                }
+                gameStats.forEach((player, playerStats) -> stats.computeIfAbsent(player, p -> new PlayerStats()).add(playerStats));
+                gamesAnalyzed++;
+            }
+        }
+    }
+
+    private void annotate(Task task, CastellaBot[] bots, EndgameSolver solver, StringBuilder lines,
+                          Map<String, PlayerStats> gameStats) {
+        GameArchive.Game game = task.game;
+        String[] players = players(game.getMode());
+        for (CastellaBot bot : bots) {
+            bot.newGame();
+        }
+        if (game.getMoveCount() > 0) {
+            gameStats.computeIfAbsent(players[0], p -> new PlayerStats()).games++;
+            gameStats.computeIfAbsent(players[1], p -> new PlayerStats()).games++;
+        }
+
+        BitBoard board = new BitBoard();
+        char player = Reversi.BLACK;
+        for (int ply = 0; ply < game.getMoveCount(); ply++) {
+            if (board.legalMoves(player) == 0) {
+                player = Reversi.getOpponent(player);
+            }
+            int square = game.getMove(ply);
+            if (square < 0 || square >= 64 || !board.isLegal(square, player)) {
+                lines.append("# ").append(task.source).append(": move ").append(ply + 1).append(" (")
+                        .append(square >= 0 && square < 64 ? BitBoard.squareName(square) : String.valueOf(square))
+                        .append(") is not legal, the rest of the game is skipped\n");
+                break;
+            }
+
+            int colour = player == Reversi.BLACK ? 0 : 1;
+            PlayerStats playerStats = gameStats.get(players[colour]);
+            playerStats.moves++;
+            lines.append(task.source).append('\t').append(ply + 1).append('\t').append(players[colour]).append('\t')
+                    .append(BitBoard.squareName(square)).append('\t');
+
+            long validMoves = board.legalMoves(player);
+            if (Long.bitCount(validMoves) == 1) {
+                lines.append("\t").append(BitBoard.squareName(square)).append("\t\t0\tforced\n");
+            } else {
+                boolean solved = board.empties() <= endgameEmpties;
+                int best, bestScore, score;
+                if (solved) {
+                    best = solver.solve(board, player, Long.MAX_VALUE);
+                    bestScore = solver.getLastScore();
+                } else {
+                    int[] move = bots[colour].getBotMove(board, player, Long.MAX_VALUE);
+                    best = BitBoard.square(move[0], move[1]);
+                    bestScore = bots[colour].getLastScore();
+                }
+
+                if (square == best) {
+                    score = bestScore;
+                } else {
+                    BitBoard child = board.copy();
+                    child.makeMove(square, player);
+                    score = solved ? solvedScore(child, player, solver) : searchedScore(child, player, bots);
+                }
+
+                int loss = Math.max(0, bestScore - score);
+                boolean blunder = loss >= (solved ? BLUNDER_DISCS : BLUNDER_SCORE);
+                if (solved) {
+                    playerStats.solvedMoves++;
+                    playerStats.solvedLoss += loss;
+                } else {
+                    playerStats.searchedMoves++;
+                    playerStats.searchedLoss += loss;
+                }
+                if (blunder) {
+                    playerStats.blunders++;
+                }
+                lines.append(score).append('\t').append(BitBoard.squareName(best)).append('\t').append(bestScore)
+                        .append('\t').append(loss).append('\t').append(solved ? "solved" : "search")
+                        .append(blunder ? " blunder" : "").append('\n');
+            }
+
+            board.makeMove(square, player);
+            player = Reversi.getOpponent(player);
+        }
+    }
+
+    // the exact final margin for the player who just moved into this position
+    private static int solvedScore(BitBoard board, char mover, EndgameSolver solver) {
+        char opponent = Reversi.getOpponent(mover);
+        if (board.legalMoves(opponent) != 0) {
+            solver.solve(board, opponent, Long.MAX_VALUE);
+            return -solver.getLastScore();
+        }
+        if (board.legalMoves(mover) != 0) {
+            solver.solve(board, mover, Long.MAX_VALUE);
+            return solver.getLastScore();
+        }
+        // the game is over, empty squares go to the winner
+        int margin = board.count(mover) - board.count(opponent);
+        return margin > 0 ? margin + board.empties() : margin < 0 ? margin - board.empties() : 0;
+    }
+
+    // the search score, one ply less deep, for the player who just moved into this position
+    private int searchedScore(BitBoard board, char mover, CastellaBot[] bots) {
+        char opponent = Reversi.getOpponent(mover);
+        if (board.legalMoves(opponent) != 0) {
+            return -bots[opponent == Reversi.BLACK ? 0 : 1].searchScore(board, opponent, depth - 1);
+        }
+        if (board.legalMoves(mover) != 0) {
+            return bots[mover == Reversi.BLACK ? 0 : 1].searchScore(board, mover, depth - 1);
+        }
+        return 10 * (board.count(mover) - board.count(opponent)); // the game is over, only the discs count
+    }
+
+    // the names of Black and White in a game mode like "Human vs MapleBot"
+    static String[] players(String mode) {
+        String[] names = mode.split("\\s+vs\\.?\\s+", 2);
+        if (names.length == 2 && !names[0].isBlank() && !names[1].isBlank()) {
+            return new String[] { names[0].trim(), names[1].trim() };
+        }
+        return new String[] { mode + " (Black)", mode + " (White)" };
+    }
+
+    public static void main(String[] args) throws IOException {
+        GameAnalyzer analyzer = new GameAnalyzer();
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--threads=")) {
+                analyzer.setThreads(Integer.parseInt(args[i].substring("--threads=".length())));
+            } else if (args[i].startsWith("--depth=")) {
+                analyzer.setDepth(Integer.parseInt(args[i].substring("--depth=".length())));
+            } else {
+                inputs.add(Paths.get(args[i]));
+            }
+        }
+        if (inputs.isEmpty()) {
+            System.out.println("Usage: java course.reversi.GameAnalyzer <out.tsv> [--threads=N] [--depth=D] <logs, archives or folders...>");
+            return;
+        }
+
+        long start = System.nanoTime();
+        try (Writer out = new BufferedWriter(Files.newBufferedWriter(Paths.get(args[0]), StandardCharsets.UTF_8), 1 << 16)) {
+            analyzer.analyze(inputs, out);
+        }
+        System.out.printf("%d games analysed in %.1f s, moves written to %s%n", analyzer.gamesAnalyzed,
+                (System.nanoTime() - start) / 1e9, args[0]);
+        analyzer.getStats().forEach((player, playerStats) -> System.out.printf("%-20s %s%n", player, playerStats));
+    }
+}
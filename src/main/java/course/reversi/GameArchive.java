@@ -0,0 +1,760 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    GameArchive keeps every finished game in one append-only file instead of a text file per game, together
+    with a small index next to it (the archive path plus ".idx") that lists each game's time, mode and result.
+
+    -   Writer:     appends games on a background thread. append() only encodes the game and queues it, the
+                    thread writes whatever has queued up in one go, so the UI never waits for the disk.
+    -   Reader:     maps both files into memory (in 1 GiB windows, so neither file is limited to 2 GiB) and
+                    reads any game directly from its index entry. A reader sees the games that were in the
+                    files when it was opened.
+    -   import:     the old "Human_vs_*.txt" logs can be appended, with the time taken from the file name. Games
+                    whose moves stop being legal are reported and left out.
+
+    Archive layout (big-endian), after an 8 byte header (int magic "RVGA", int version):
+
+        long    time the game ended, milliseconds since the epoch
+        byte    black discs at the end
+        byte    white discs at the end
+        byte    number of moves n
+        byte    length m of the mode
+        m bytes the game mode ("Human vs CastellaBot"), UTF-8
+        n bytes the moves as squares (A1 = 0). Passes are not stored, whoever has no move passes.
+
+    Index layout, after an 8 byte header (int magic "RVGI", int version), 24 bytes per game:
+
+        long    offset of the game in the archive
+        long    time the game ended
+        int     hash of the mode (String.hashCode), to filter by mode without reading the archive
+        byte    black discs, white discs, number of moves, 0
+
+    Usage: java course.reversi.GameArchive import <archive> <log files or folders...>
+           java course.reversi.GameArchive list <archive> [mode]
+
+ */
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+public final class GameArchive {
+
+    public static final String DEFAULT_FILE = "games.archive";
+
+    private static final int ARCHIVE_MAGIC = 0x52564741; // "RVGA"
+    private static final int INDEX_MAGIC = 0x52564749;   // "RVGI"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int INDEX_ENTRY_BYTES = 24;
+    private static final int GAME_HEADER_BYTES = 12;
+
+    // most games the writer thread puts into one write
+    private static final int MAX_BATCH = 256;
+
+    // the time stamp the text logs carry in their file name
+    private static final Pattern LOG_TIME = Pattern.compile("(\\d{4}-\\d{2}-\\d{2}_\\d{2}-\\d{2}-\\d{2})\\.txt$");
+
+    private GameArchive() {
+    }
+
+    public enum Result {
+        BLACK_WINS,
+        WHITE_WINS,
+        DRAW;
+
+        static Result of(int blackDiscs, int whiteDiscs) {
+            return blackDiscs > whiteDiscs ? BLACK_WINS : whiteDiscs > blackDiscs ? WHITE_WINS : DRAW;
+        }
+    }
+
+    public static Path indexFile(Path archive) {
+        return archive.resolveSibling(archive.getFileName() + ".idx");
+    }
+
+    /*
+
+        Encodes one game as it is stored in the archive. The moves are replayed to find the final discs, and a
+        move that is not legal ends the game there (so does the 61st move).
+     */
+    static byte[] encode(long time, String mode, byte[] squares, int count) {
+        BitBoard board = new BitBoard();
+        int length = replay(board, squares, count);
+
+        byte[] modeBytes = mode.getBytes(StandardCharsets.UTF_8);
+        int modeLength = Math.min(modeBytes.length, 255);
+
+        ByteBuffer game = ByteBuffer.allocate(GAME_HEADER_BYTES + modeLength + length);
+        game.putLong(time)
+                .put((byte) board.count(Reversi.BLACK))
+                .put((byte) board.count(Reversi.WHITE))
+                .put((byte) length)
+                .put((byte) modeLength)
+                .put(modeBytes, 0, modeLength)
+                .put(squares, 0, length);
+        return game.array();
+    }
+
+    // plays the moves on the board (from the start position) as long as they are legal, passes included.
+    // Returns how many were played.
+    static int replay(BitBoard board, byte[] squares, int count) {
+        char player = Reversi.BLACK;
+        int length = 0;
+        while (length < count && length < 60) {
+            if (board.legalMoves(player) == 0) {
+                player = Reversi.getOpponent(player);
+            }
+            int square = squares[length];
+            if (square < 0 || square >= 64 || !board.isLegal(square, player)) {
+                break;
+            }
+            board.makeMove(square, player);
+            player = Reversi.getOpponent(player);
+            length++;
+        }
+        return length;
+    }
+
+    /*
+
+        Writer appends games to an archive and its index from a thread of its own. Games are written in the
+        order they were appended. A failed write is kept and thrown by the next flush or close.
+     */
+    public static final class Writer implements Closeable {
+        private static final Object STOP = new Object();
+
+        private final FileChannel archive;
+        private final FileChannel index;
+        private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();  // encoded games, flush latches, STOP
+        private final Thread thread;
+        private volatile IOException failure = null;
+        private volatile boolean closed = false;
+
+        private Writer(FileChannel archive, FileChannel index) {
+            this.archive = archive;
+            this.index = index;
+            this.thread = new Thread(this::run, "game-archive");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        // opens the archive for appending, creating it and its index if they don't exist yet
+        public static Writer open(Path file) throws IOException {
+            FileChannel archive = openFile(file, ARCHIVE_MAGIC);
+            try {
+                FileChannel index = openFile(indexFile(file), INDEX_MAGIC);
+                try {
+                    trimToWholeGames(archive, index);
+                } catch (IOException e) {
+                    index.close();
+                    throw e;
+                }
+                return new Writer(archive, index);
+            } catch (IOException e) {
+                archive.close();
+                throw e;
+            }
+        }
+
+        /*
+
+            Cuts off what the last write left half done when the program stopped in the middle of it: a partial
+            index entry, entries whose game is not whole in the archive, and archive bytes no entry points to.
+            New games then go right after the last whole one, where the Reader will find them.
+         */
+        private static void trimToWholeGames(FileChannel archive, FileChannel index) throws IOException {
+            long archiveSize = archive.size();
+            long games = (index.size() - HEADER_BYTES) / INDEX_ENTRY_BYTES;
+            long archiveEnd = HEADER_BYTES;
+            ByteBuffer buffer = ByteBuffer.allocate(GAME_HEADER_BYTES);
+            while (games > 0) {
+                buffer.clear().limit(Long.BYTES);
+                index.read(buffer, HEADER_BYTES + (games - 1) * INDEX_ENTRY_BYTES);
+                long offset = buffer.getLong(0);
+
+                buffer.clear();
+                if (offset >= HEADER_BYTES && offset + GAME_HEADER_BYTES <= archiveSize
+                        && archive.read(buffer, offset) == GAME_HEADER_BYTES) {
+                    long end = offset + GAME_HEADER_BYTES + (buffer.get(11) & 0xFF) + (buffer.get(10) & 0xFF);
+                    if (end <= archiveSize) {
+                        archiveEnd = end;
+                        break;
+                    }
+                }
+                games--;
+            }
+            index.truncate(HEADER_BYTES + games * INDEX_ENTRY_BYTES);
+            archive.truncate(archiveEnd);
+        }
+
+        private static FileChannel openFile(Path file, int magic) throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            try {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                if (channel.size() == 0) {
+                    header.putInt(magic).putInt(VERSION).flip();
+                    writeFully(channel, header, 0);
+                } else {
+                    channel.read(header, 0);
+                    if (header.getInt(0) != magic || header.getInt(4) != VERSION) {
+                        throw new IOException(file + " is not a game archive of this version");
+                    }
+                }
+                return channel;
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        public void append(String mode, long time, byte[] squares, int count) {
+            if (closed) {
+                throw new IllegalStateException("the archive writer is closed");
+            }
+            queue.add(encode(time, mode, squares, count));
+        }
+
+        // waits until everything appended so far is written
+        public void flush() throws IOException {
+            if (closed) {
+                throw new IllegalStateException("the archive writer is closed");
+            }
+            CountDownLatch written = new CountDownLatch(1);
+            queue.add(written);
+            try {
+                written.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while flushing the game archive", e);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(STOP);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            archive.close();
+            index.close();
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        private void run() {
+            List<Object> batch = new ArrayList<>();
+            while (true) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                queue.drainTo(batch, MAX_BATCH - 1);
+
+                boolean stop = false;
+                List<byte[]> games = new ArrayList<>();
+                for (Object item : batch) {
+                    if (item instanceof byte[]) {
+                        games.add((byte[]) item);
+                    } else {
+                        // a latch or STOP waits for the games in front of it, which all come first in the batch
+                        write(games);
+                        games.clear();
+                        if (item == STOP) {
+                            stop = true;
+                        } else {
+                            ((CountDownLatch) item).countDown();
+                        }
+                    }
+                }
+                write(games);
+                batch.clear();
+                if (stop) {
+                    return;
+                }
+            }
+        }
+
+        // the games go into the archive first, so an index entry never points past its end
+        private void write(List<byte[]> games) {
+            if (games.isEmpty() || failure != null) {
+                return;
+            }
+            try {
+                long offset = archive.size();
+                long indexEnd = index.size();
+                int bytes = games.stream().mapToInt(game -> game.length).sum();
+                ByteBuffer data = ByteBuffer.allocate(bytes);
+                ByteBuffer entries = ByteBuffer.allocate(games.size() * INDEX_ENTRY_BYTES);
+                for (byte[] game : games) {
+                    ByteBuffer header = ByteBuffer.wrap(game);
+                    int modeLength = header.get(11) & 0xFF;
+                    String mode = new String(game, GAME_HEADER_BYTES, modeLength, StandardCharsets.UTF_8);
+                    entries.putLong(offset + data.position())
+                            .putLong(header.getLong(0))
+                            .putInt(mode.hashCode())
+                            .put(game[8]).put(game[9]).put(game[10]).put((byte) 0);
+                    data.put(game);
+                }
+                data.flip();
+                entries.flip();
+                writeFully(archive, data, offset);
+                writeFully(index, entries, indexEnd);
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+    /*
+
+        Reader maps an archive and its index. Games are numbered in the order they were appended. Index entries
+        whose game did not make it into the archive (the program stopped between the two writes) are left out,
+        the next Writer.open cuts them off for good.
+     */
+    public static final class Reader {
+        private final MappedFile archive;
+        private final MappedFile index;
+        private final int games;
+
+        private Reader(MappedFile archive, MappedFile index, int games) {
+            this.archive = archive;
+            this.index = index;
+            this.games = games;
+        }
+
+        public static Reader open(Path file) throws IOException {
+            MappedFile archive = MappedFile.open(file, ARCHIVE_MAGIC);
+            MappedFile index = MappedFile.open(indexFile(file), INDEX_MAGIC);
+
+            int games = Math.toIntExact((index.size - HEADER_BYTES) / INDEX_ENTRY_BYTES);
+            while (games > 0) {
+                long offset = index.getLong(entry(games - 1));
+                if (offset + GAME_HEADER_BYTES <= archive.size && offset + gameBytes(archive, offset) <= archive.size) {
+                    break;
+                }
+                games--;
+            }
+            return new Reader(archive, index, games);
+        }
+
+        private static long entry(int game) {
+            return HEADER_BYTES + (long) game * INDEX_ENTRY_BYTES;
+        }
+
+        private static int gameBytes(MappedFile archive, long offset) {
+            return GAME_HEADER_BYTES + (archive.get(offset + 11) & 0xFF) + (archive.get(offset + 10) & 0xFF);
+        }
+
+        public int size() {
+            return games;
+        }
+
+        public long getTime(int game) {
+            return index.getLong(entry(game) + 8);
+        }
+
+        public int getBlackDiscs(int game) {
+            return index.get(entry(game) + 20);
+        }
+
+        public int getWhiteDiscs(int game) {
+            return index.get(entry(game) + 21);
+        }
+
+        public Result getResult(int game) {
+            return Result.of(getBlackDiscs(game), getWhiteDiscs(game));
+        }
+
+        public int getMoveCount(int game) {
+            return index.get(entry(game) + 22);
+        }
+
+        public String getMode(int game) {
+            long offset = index.getLong(entry(game));
+            byte[] mode = new byte[archive.get(offset + 11) & 0xFF];
+            archive.get(offset + GAME_HEADER_BYTES, mode);
+            return new String(mode, StandardCharsets.UTF_8);
+        }
+
+        public Game getGame(int game) {
+            long offset = index.getLong(entry(game));
+            byte[] squares = new byte[archive.get(offset + 10) & 0xFF];
+            archive.get(offset + GAME_HEADER_BYTES + (archive.get(offset + 11) & 0xFF), squares);
+            return new Game(getMode(game), getTime(game), squares, squares.length);
+        }
+
+        // copies the squares of the game's moves into out and returns how many there are
+        public int getMoves(int game, int[] out) {
+            long offset = index.getLong(entry(game));
+            int moves = archive.get(offset + 10) & 0xFF;
+            long start = offset + GAME_HEADER_BYTES + (archive.get(offset + 11) & 0xFF);
+            for (int i = 0; i < moves; i++) {
+                out[i] = archive.get(start + i);
+            }
+            return moves;
+        }
+
+        /*
+
+            The games matching every filter that is given: the mode (null for any), the time range in
+            milliseconds since the epoch (inclusive) and the result (null for any). Only the index is read,
+            apart from the mode check of games whose mode hash matches.
+         */
+        public int[] find(String mode, long fromTime, long toTime, Result result) {
+            int[] found = new int[games];
+            int count = 0;
+            for (int game = 0; game < games; game++) {
+                long entry = entry(game);
+                long time = index.getLong(entry + 8);
+                if (time < fromTime || time > toTime) {
+                    continue;
+                }
+                if (result != null && Result.of(index.get(entry + 20), index.get(entry + 21)) != result) {
+                    continue;
+                }
+                if (mode != null && (index.getInt(entry + 16) != mode.hashCode() || !getMode(game).equals(mode))) {
+                    continue;
+                }
+                found[count++] = game;
+            }
+            return Arrays.copyOf(found, count);
+        }
+    }
+
+    /*
+
+        A file mapped in windows, since one MappedByteBuffer stops at 2 GiB. Window k maps from k * WINDOW_BYTES
+        and reaches OVERLAP bytes into the next window, so a record of up to OVERLAP bytes that starts in a
+        window is read from that window alone.
+     */
+    private static final class MappedFile {
+        private static final int WINDOW_BITS = 30;
+        private static final long WINDOW_BYTES = 1L << WINDOW_BITS;
+        private static final int OVERLAP = 1024; // more than the longest game record, 12 + 255 + 60 bytes
+
+        private final MappedByteBuffer[] windows;
+        private final long size;
+
+        private MappedFile(MappedByteBuffer[] windows, long size) {
+            this.windows = windows;
+            this.size = size;
+        }
+
+        static MappedFile open(Path file, int magic) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long size = channel.size();
+                MappedByteBuffer[] windows = new MappedByteBuffer[(int) (size >>> WINDOW_BITS) + 1];
+                for (int k = 0; k < windows.length; k++) {
+                    long start = k * WINDOW_BYTES;
+                    windows[k] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, WINDOW_BYTES + OVERLAP));
+                }
+                MappedFile mapped = new MappedFile(windows, size);
+                if (size < HEADER_BYTES || mapped.getInt(0) != magic || mapped.getInt(4) != VERSION) {
+                    throw new IOException(file + " is not a game archive of this version");
+                }
+                return mapped;
+            }
+        }
+
+        private MappedByteBuffer window(long position) {
+            return windows[(int) (position >>> WINDOW_BITS)];
+        }
+
+        private static int inWindow(long position) {
+            return (int) (position & (WINDOW_BYTES - 1));
+        }
+
+        byte get(long position) {
+            return window(position).get(inWindow(position));
+        }
+
+        int getInt(long position) {
+            return window(position).getInt(inWindow(position));
+        }
+
+        long getLong(long position) {
+            return window(position).getLong(inWindow(position));
+        }
+
+        void get(long position, byte[] out) {
+            window(position).get(inWindow(position), out);
+        }
+    }
+
+    // one game, as read from the archive or from a text log
+    public static final class Game {
+        private final String mode;
+        private final long time;
+        private final byte[] squares;
+        private final int count;
+
+        Game(String mode, long time, byte[] squares, int count) {
+            this.mode = mode;
+            this.time = time;
+            this.squares = squares;
+            this.count = count;
+        }
+
+        public String getMode() {
+            return mode;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public int getMoveCount() {
+            return count;
+        }
+
+        public int getMove(int index) {
+            return squares[index];
+        }
+    }
+
+    /*
+
+        Reads a text log in the "Game Mode: ..." then "⚫: D3" lines form. The time comes from the file name, or
+        from the file's last change when the name has none.
+
+        Older logs are polluted: the game logged every move made on any board, so a bot's search shows up as a
+        run of its candidate moves before the move it played, and a log can go on into the next game. Each run
+        of lines of one colour is therefore read as the last move of the run, or as all of them when every one
+        is legal and the opponent had to pass in between. A move that is not legal but opens a game starts the
+        next game. Anything else that is not legal is kept as logged, so the game can be recognised as broken.
+     */
+    public static List<Game> readLog(Path file) throws IOException {
+        String mode = "Unknown";
+        List<Character> colours = new ArrayList<>();
+        List<Integer> logged = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("Game Mode: ")) {
+                    mode = line.substring("Game Mode: ".length()).trim();
+                    continue;
+                }
+                // move lines look like "⚫: D3"
+                if (line.indexOf(": ") != 1 || line.length() != 5) {
+                    continue;
+                }
+                char colour = line.charAt(0);
+                int square = BitBoard.parseSquare(line.substring(3));
+                if (square >= 0 && (colour == Reversi.BLACK || colour == Reversi.WHITE)) {
+                    colours.add(colour);
+                    logged.add(square);
+                }
+            }
+        }
+
+        long time = Files.getLastModifiedTime(file).toMillis();
+        Matcher matcher = LOG_TIME.matcher(file.getFileName().toString());
+        if (matcher.find()) {
+            try {
+                time = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").parse(matcher.group(1)).getTime();
+            } catch (ParseException e) {
+                // keep the file time
+            }
+        }
+
+        LogGames games = new LogGames(mode, time);
+        for (int start = 0; start < logged.size(); ) {
+            char player = colours.get(start);
+            int end = start;
+            while (end < logged.size() && colours.get(end) == player) {
+                end++;
+            }
+            // a bot that searched played its pick as a candidate before, its other lines are never moves
+            int last = logged.get(end - 1);
+            List<Integer> before = logged.subList(start, end - 1);
+            if (!before.contains(last)) {
+                games.playPasses(before, player);
+            }
+            games.play(last, player);
+            start = end;
+        }
+        return games.finish();
+    }
+
+    // the games of one text log as they are read, see readLog
+    private static final class LogGames {
+        private final String mode;
+        private final long time;
+        private final List<Game> games = new ArrayList<>();
+        private BitBoard board = new BitBoard();
+        private byte[] squares = new byte[60];
+        private int count = 0;
+        private boolean broken = false;
+
+        LogGames(String mode, long time) {
+            this.mode = mode;
+            this.time = time;
+        }
+
+        // plays the moves one after the other if each is legal and the opponent has no move after it,
+        // otherwise none of them
+        void playPasses(List<Integer> moves, char player) {
+            if (moves.isEmpty() || broken || count + moves.size() > squares.length) {
+                return;
+            }
+            BitBoard trial = board.copy();
+            for (int square : moves) {
+                if (!trial.isLegal(square, player)) {
+                    return;
+                }
+                trial.makeMove(square, player);
+                if (trial.legalMoves(Reversi.getOpponent(player)) != 0) {
+                    return;
+                }
+            }
+            for (int square : moves) {
+                play(square, player);
+            }
+        }
+
+        void play(int square, char player) {
+            if (!broken && count < squares.length && board.isLegal(square, player)) {
+                board.makeMove(square, player);
+                squares[count++] = (byte) square;
+                return;
+            }
+            if (count > 0 && player == Reversi.BLACK && new BitBoard().isLegal(square, player)) {
+                // the log goes on with the next game
+                finishGame();
+                play(square, player);
+                return;
+            }
+            if (count < squares.length) {
+                squares[count++] = (byte) square;
+            }
+            broken = true;
+        }
+
+        private void finishGame() {
+            games.add(new Game(mode, time, squares, count));
+            board = new BitBoard();
+            squares = new byte[60];
+            count = 0;
+            broken = false;
+        }
+
+        List<Game> finish() {
+            if (count > 0) {
+                finishGame();
+            }
+            return games;
+        }
+    }
+
+    /*
+
+        Appends the games of a text log to the archive and returns how many. A game whose moves stop being legal
+        is reported and left out, its result would be made up.
+     */
+    public static int importLog(Writer writer, Path file) throws IOException {
+        List<Game> games = readLog(file);
+        int imported = 0;
+        for (int i = 0; i < games.size(); i++) {
+            Game game = games.get(i);
+            int legal = replay(new BitBoard(), game.squares, game.count);
+            if (legal < game.count) {
+                System.err.println(file + ": move " + (legal + 1) + " of game " + (i + 1)
+                        + " is not legal, the game is not imported");
+                continue;
+            }
+            writer.append(game.mode, game.time, game.squares, game.count);
+            imported++;
+        }
+        return imported;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !(args[0].equals("import") || args[0].equals("list"))) {
+            System.out.println("Usage: java course.reversi.GameArchive import <archive> <log files or folders...>");
+            System.out.println("       java course.reversi.GameArchive list <archive> [mode]");
+            return;
+        }
+        Path file = Paths.get(args[1]);
+
+        if (args[0].equals("import")) {
+            int imported = 0;
+            try (Writer writer = Writer.open(file)) {
+                for (int i = 2; i < args.length; i++) {
+                    Path path = Paths.get(args[i]);
+                    List<Path> logs = new ArrayList<>();
+                    if (Files.isDirectory(path)) {
+                        try (Stream<Path> listing = Files.list(path)) {
+                            listing.filter(p -> p.getFileName().toString().endsWith(".txt")).sorted().forEach(logs::add);
+                        }
+                    } else {
+                        logs.add(path);
+                    }
+                    for (Path log : logs) {
+                        imported += importLog(writer, log);
+                    }
+                }
+            }
+            System.out.println(imported + " games imported into " + file);
+            return;
+        }
+
+        Reader reader = Reader.open(file);
+        String mode = args.length > 2 ? args[2] : null;
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        int[] moves = new int[60];
+        int[] games = reader.find(mode, Long.MIN_VALUE, Long.MAX_VALUE, null);
+        for (int game : games) {
+            int count = reader.getMoves(game, moves);
+            StringBuilder line = new StringBuilder();
+            line.append(dateFormat.format(new Date(reader.getTime(game)))).append("  ")
+                    .append(String.format("%-24s %2d-%-2d %-10s ", reader.getMode(game),
+                            reader.getBlackDiscs(game), reader.getWhiteDiscs(game), reader.getResult(game)));
+            for (int i = 0; i < count; i++) {
+                line.append(BitBoard.squareName(moves[i]));
+            }
+            System.out.println(line);
+        }
+        System.out.println(games.length + " of " + reader.size() + " games");
+    }
+}
@@ -0,0 +1,115 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    GameSession holds everything that belongs to one game: its board, the player whose turn it is and the
+    record of the moves actually played. Only moves made through play() are recorded, so the moves bots
+    simulate while searching (which go straight to the BitBoard) never end up in the saved game log.
+
+    Since nothing here is static, any number of sessions can run side by side in the same program.
+
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class GameSession {
+
+    // a game has at most 60 moves, one for each square that starts out empty
+    private static final int MAX_MOVES = 60;
+
+    private final BitBoard board = new BitBoard();
+    private char currentPlayer = Reversi.BLACK;
+
+    // the move record, kept as squares and movers instead of strings
+    private final byte[] squares = new byte[MAX_MOVES];
+    private final char[] movers = new char[MAX_MOVES];
+    private int moveCount = 0;
+
+    public GameSession() {
+        reset();
+    }
+
+    // starts a new game on the same session
+    public void reset() {
+        board.reset();
+        currentPlayer = Reversi.BLACK;
+        moveCount = 0;
+    }
+
+    // the board of this game. Callers should not change it directly, otherwise the record goes out of sync.
+    public BitBoard getBoard() {
+        return board;
+    }
+
+    public char getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    public boolean isValidMove(int row, int col) {
+        return board.isLegal(BitBoard.square(row, col), currentPlayer);
+    }
+
+    public boolean canMove() {
+        return board.legalMoves(currentPlayer) != 0;
+    }
+
+    public boolean isGameOver() {
+        return board.legalMoves(Reversi.BLACK) == 0 && board.legalMoves(Reversi.WHITE) == 0;
+    }
+
+    /*
+
+        Plays a move for the current player, records it and hands the turn to the other player.
+        Returns the mask of flipped squares.
+     */
+    public long play(int row, int col) {
+        int square = BitBoard.square(row, col);
+        long flipped = board.makeMove(square, currentPlayer);
+
+        squares[moveCount] = (byte) square;
+        movers[moveCount] = currentPlayer;
+        moveCount++;
+
+        currentPlayer = Reversi.getOpponent(currentPlayer);
+        return flipped;
+    }
+
+    // the current player has no move, so the turn goes to the other player
+    public void pass() {
+        currentPlayer = Reversi.getOpponent(currentPlayer);
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    public int getMoveSquare(int index) {
+        return squares[index];
+    }
+
+    public char getMover(int index) {
+        return movers[index];
+    }
+
+    // the move record in the "⚫: D3" form used by the saved game logs
+    public List<String> getMoveHistory() {
+        List<String> history = new ArrayList<>(moveCount);
+        for (int i = 0; i < moveCount; i++) {
+            history.add(movers[i] + ": " + BitBoard.squareName(squares[i]));
+        }
+        return history;
+    }
+
+    // saves the moves of this game to a txt file
+    public void saveMovesToFile(String gameMode) {
+        Reversi.saveMovesToFile(gameMode, getMoveHistory());
+    }
+
+    // queues this game for the archive, the writer's own thread does the writing
+    public void saveTo(GameArchive.Writer archive, String gameMode) {
+        archive.append(gameMode, System.currentTimeMillis(), squares, moveCount);
+    }
+}
@@ -9,7 +9,6 @@ package course.reversi;
     newly placed piece.
 
  */
-import java.util.List;
 
 public class MapleBot extends SimpleBot {
 
@@ -26,33 +25,36 @@ public class MapleBot extends SimpleBot {
     };
 
     @Override
-    public int[] getBotMove(char[][] board, char player) {
-        List<String> validMoves = Reversi.getValidMoves(board, player);
-        if (validMoves.isEmpty()) {
+    public int[] getBotMove(BitBoard board, char player) {
+        long validMoves = board.legalMoves(player);
+        if (validMoves == 0) {
             return null;
         }
 
         int bestScore = Integer.MIN_VALUE;
-        String bestMove = validMoves.get(0);
+        int bestMove = Long.numberOfTrailingZeros(validMoves);
+        BitBoard position = board.copy();
 
-        for (String move : validMoves) {
-            int[] coords = convertMove(move);
-            char[][] simulated = Reversi.copyBoard(board);
-            Reversi.makeMove(simulated, coords[0], coords[1], player);
+        while (validMoves != 0) {
+            int move = Long.numberOfTrailingZeros(validMoves);
+            validMoves &= validMoves - 1;
+
+            long flipped = position.makeMove(move, player);
+            int moveScore = evaluateBoard(position, player, move);
+            position.undoMove(move, flipped, player);
 
-            int moveScore = evaluateBoard(simulated, player, coords);
             if (moveScore > bestScore) {
                 bestScore = moveScore;
                 bestMove = move;
             }
         }
 
-        return convertMove(bestMove);
+        return toMove(bestMove);
     }
 
-    private int evaluateBoard(char[][] board, char player, int[] move) {
-        int positional = POSITION_WEIGHTS[move[0]][move[1]];
-        int pieceCount = Reversi.countPieces(board, player);
+    private int evaluateBoard(BitBoard board, char player, int move) {
+        int positional = POSITION_WEIGHTS[move / 8][move % 8];
+        int pieceCount = board.count(player);
         return pieceCount + positional;
     }
-}
\ No newline at end of file
+}
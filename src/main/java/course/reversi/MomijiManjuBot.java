@@ -5,51 +5,145 @@ package course.reversi;
     Description:
     MomijiManjuBot is a Reversi (Othello) agent trained using a simple reinforcement learning
     algorithm based on Temporal-Difference (TD) learning with linear function approximation.
+    On top of the linear features it adds a PatternEvaluator, whose pattern tables are trained
+    the same way, and both are loaded from a WeightFile when there is one. Near the end of the
+    game it hands over to the EndgameSolver and plays perfectly.
 
  */
-import java.util.List;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class MomijiManjuBot extends SimpleBot {
 
-    private static final int NUM_FEATURES = 10;
-    private double[] weights = new double[NUM_FEATURES];
+    static final int NUM_FEATURES = 10;
+    private double[] weights;
+    private PatternEvaluator patterns;
+
+    private static final long ENDGAME_BUDGET_MILLIS = 1000;
+    private final EndgameSolver endgameSolver = new EndgameSolver(this::isStopRequested);
+
+    // the board getBotMove plays its candidate moves on, and the one the BitBoard overload of extractFeatures uses.
+    // Both keep the pattern indices as well, so evaluating a move is a table lookup per pattern.
+    private final PatternBoard position = new PatternBoard();
+    private final PatternBoard featureBoard = new PatternBoard();
+    private int endgameEmpties = EndgameSolver.DEFAULT_EMPTIES;
+
+    // scoreMoves works on these instead of allocating: the legal moves, one column per feature with a row per
+    // move, the value of each move, and the pattern scratch
+    private static final int MAX_MOVES = 32;
+    private final int[] moves = new int[MAX_MOVES];
+    private final double[][] childFeatures = new double[NUM_FEATURES][MAX_MOVES];
+    private final double[] moveValues = new double[MAX_MOVES];
+    private final PatternEvaluator.Scratch patternScratch = new PatternEvaluator.Scratch();
 
 
     public MomijiManjuBot() {
+        this.patterns = new PatternEvaluator();
         loadTrainedWeights();
     }
 
+    // plays with the given weights and pattern tables, kept by reference like setWeights and setPatterns.
+    // The weight file is not read, so a trainer that brings its own weights does not pay for loading it.
+    public MomijiManjuBot(double[] weights, PatternEvaluator patterns) {
+        if (weights.length != NUM_FEATURES) {
+            throw new IllegalArgumentException("expected " + NUM_FEATURES + " weights, got " + weights.length);
+        }
+        this.weights = weights;
+        this.patterns = patterns;
+    }
+
     // --- Move Selection ---
     @Override
-    public int[] getBotMove(char[][] board, char player) {
-        List<String> validMoves = Reversi.getValidMoves(board, player);
-        if (validMoves.isEmpty()) {
+    public int[] getBotMove(BitBoard board, char player) {
+        long validMoves = board.legalMoves(player);
+        if (validMoves == 0) {
             return null;
         }
 
-        double bestValue = Double.NEGATIVE_INFINITY;
-        String bestMove = validMoves.get(0);
+        if (board.empties() <= endgameEmpties) {
+            int move = endgameSolver.solve(board, player, System.nanoTime() + ENDGAME_BUDGET_MILLIS * 1_000_000L);
+            if (move >= 0) {
+                return toMove(move);
+            }
+        }
+
+        position.copyFrom(board);
+        int count = scoreMoves(position, player, moves, moveValues);
 
         // Find the move that maximizes the estimated value of the resulting state V(S')
-        for (String move : validMoves) {
-            int[] coords = convertMove(move);
-            char[][] simulated = Reversi.copyBoard(board);
-            Reversi.makeMove(simulated, coords[0], coords[1], player);
+        double bestValue = Double.NEGATIVE_INFINITY;
+        int bestMove = moves[0];
+        for (int i = 0; i < count; i++) {
+            if (moveValues[i] > bestValue) {
+                bestValue = moveValues[i];
+                bestMove = moves[i];
+            }
+        }
 
-            double[] features = extractFeatures(simulated, player);
+        return toMove(bestMove);
+    }
 
-            double value = estimateValue(features, this.weights);
+    /*
 
-            if (value > bestValue) {
-                bestValue = value;
-                bestMove = move;
-            }
+        Scores every legal move of the player in one pass: values[i] is evaluate() of the position after
+        moves[i], without playing any of the moves on the board. Each child's features are worked out on the
+        disc masks from the parent and the move's flips, and written as one row of the feature matrix. The
+        pattern value of a child is the parent's plus the change of the few instances the move touches. The
+        matrix is then multiplied with the weights in one go. Returns the number of moves.
+     */
+    public int scoreMoves(PatternBoard board, char player, int[] moves, double[] values) {
+        char opponent = Reversi.getOpponent(player);
+        long p = board.discs(player);
+        long o = board.discs(opponent);
+        int count = BitBoard.fillMoves(BitBoard.legalMoves(p, o), moves);
+
+        int pieceDifference = Long.bitCount(p) - Long.bitCount(o);
+        int cornerDifference = Long.bitCount(p & BitBoard.CORNERS) - Long.bitCount(o & BitBoard.CORNERS);
+        double parentPatterns = patterns.evaluate(board, player);
+        long x1 = BitBoard.bit(BitBoard.square(1, 1));
+        long x2 = BitBoard.bit(BitBoard.square(1, 2));
+
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            long placed = BitBoard.bit(move);
+            long flipped = BitBoard.flips(p, o, move);
+            long childP = p | placed | flipped;
+            long childO = o & ~flipped;
+            long frontier = BitBoard.neighbours(~(childP | childO));
+            int flips = Long.bitCount(flipped);
+
+            childFeatures[0][i] = (double)(pieceDifference + 1 + 2 * flips) / 64.0;
+            childFeatures[1][i] = (double)(Long.bitCount(BitBoard.legalMoves(childP, childO))
+                    - Long.bitCount(BitBoard.legalMoves(childO, childP))) / 64.0;
+            childFeatures[2][i] = (cornerDifference + Long.bitCount(placed & BitBoard.CORNERS)
+                    + 2 * Long.bitCount(flipped & BitBoard.CORNERS)) / 4.0;
+            childFeatures[3][i] = (double)(Long.bitCount(childO & frontier) - Long.bitCount(childP & frontier)) / 64.0;
+            childFeatures[4][i] = (childP & x1) != 0 ? 1.0 : ((childO & x1) != 0 ? -1.0 : 0.0);
+            childFeatures[5][i] = (childP & x2) != 0 ? 1.0 : ((childO & x2) != 0 ? -1.0 : 0.0);
+
+            values[i] = parentPatterns + patterns.moveDelta(board, player, move, flipped, patternScratch);
         }
 
-        return convertMove(bestMove);
+        // columns 6 and up are never written, they stay 0 like the unused slots of extractFeatures
+        for (int j = 0; j < NUM_FEATURES; j++) {
+            double weight = weights[j];
+            double[] column = childFeatures[j];
+            for (int i = 0; i < count; i++) {
+                values[i] += weight * column[i];
+            }
+        }
+        return count;
     }
 
     // --- Value Estimation (The Linear Function) ---
+    // full value of a position for the player: the linear features plus the pattern tables
+    public double evaluate(PatternBoard board, char player) {
+        return estimateValue(extractFeatures(board, player), this.weights) + patterns.evaluate(board, player);
+    }
+
     public double estimateValue(double[] features, double[] weights) {
         double value = 0;
         for (int i = 0; i < weights.length; i++) {
@@ -63,63 +157,65 @@ public class MomijiManjuBot extends SimpleBot {
      * Converts a board state into a feature vector f(S).
      */
     public double[] extractFeatures(char[][] board, char player) {
+        return extractFeatures(BitBoard.fromArray(board), player);
+    }
+
+    public double[] extractFeatures(BitBoard board, char player) {
+        featureBoard.copyFrom(board);
+        return extractFeatures(featureBoard, player);
+    }
+
+    /**
+     * Converts a board state into a feature vector f(S). Every term is read from the EvalBoard in constant time.
+     */
+    public double[] extractFeatures(EvalBoard board, char player) {
         double[] features = new double[NUM_FEATURES];
+        extractFeatures(board, player, features);
+        return features;
+    }
+
+    // the same, written into the caller's array so training can reuse one buffer
+    public void extractFeatures(EvalBoard board, char player, double[] features) {
         char opponent = Reversi.getOpponent(player);
 
-        features[0] = (double)(Reversi.countPieces(board, player) - Reversi.countPieces(board, opponent)) / 64.0;
+        features[0] = (double)board.pieceDifference(player) / 64.0;
 
-        features[1] = (double)(Reversi.getValidMoves(board, player).size() - Reversi.getValidMoves(board, opponent).size()) / 64.0;
+        features[1] = (double)board.mobilityDifference(player) / 64.0;
 
-        features[2] = getCornerScore(board, player) / 4.0;
+        features[2] = board.cornerDifference(player) / 4.0;
 
-        int playerFrontier = countFrontierDiscs(board, player);
-        int opponentFrontier = countFrontierDiscs(board, opponent);
-        features[3] = (double)(opponentFrontier - playerFrontier) / 64.0;
+        features[3] = (double)(board.frontierDiscs(opponent) - board.frontierDiscs(player)) / 64.0;
 
-        features[4] = board[1][1] == player ? 1.0 : (board[1][1] == opponent ? -1.0 : 0.0);
-        features[5] = board[1][2] == player ? 1.0 : (board[1][2] == opponent ? -1.0 : 0.0);
+        features[4] = squareFeature(board, player, BitBoard.square(1, 1));
+        features[5] = squareFeature(board, player, BitBoard.square(1, 2));
 
-        return features;
+        for (int i = 6; i < NUM_FEATURES; i++) {
+            features[i] = 0;
+        }
     }
 
     // --- Utility Methods ---
 
-    private double getCornerScore(char[][] board, char player) {
-        char opponent = Reversi.getOpponent(player);
-        int score = 0;
-        int[][] corners = {{0, 0}, {0, 7}, {7, 0}, {7, 7}};
-        for(int[] c : corners) {
-            if (board[c[0]][c[1]] == player) score++;
-            else if (board[c[0]][c[1]] == opponent) score--;
-        }
-        return (double)score;
-    }
-
-    private int countFrontierDiscs(char[][] board, char player) {
-        int frontier = 0;
-        int[] dr = {-1, -1, -1, 0, 0, 1, 1, 1};
-        int[] dc = {-1, 0, 1, -1, 1, -1, 0, 1};
-
-        for (int r = 0; r < 8; r++) {
-            for (int c = 0; c < 8; c++) {
-                if (board[r][c] == player) {
-                    for (int i = 0; i < 8; i++) {
-                        int nr = r + dr[i];
-                        int nc = c + dc[i];
-
-                        if (nr >= 0 && nr < 8 && nc >= 0 && nc < 8 && board[nr][nc] == Reversi.EMPTY) {
-                            frontier++;
-                            break;
-                        }
-                    }
-                }
-            }
-        }
-        return frontier;
+    private double squareFeature(BitBoard board, char player, int square) {
+        long b = BitBoard.bit(square);
+        return (board.discs(player) & b) != 0 ? 1.0 : ((board.discs(Reversi.getOpponent(player)) & b) != 0 ? -1.0 : 0.0);
     }
 
-    // Placeholder to load the weights learned by the trainer
+    // Loads the weights the trainer wrote to WeightFile.DEFAULT_FILE. Without a usable file the bot plays
+    // with the built-in weights below and empty pattern tables.
     private void loadTrainedWeights() {
+        Path file = Paths.get(WeightFile.DEFAULT_FILE);
+        if (Files.exists(file)) {
+            double[] trained = new double[NUM_FEATURES];
+            try {
+                WeightFile.load(file, trained, patterns);
+                this.weights = trained;
+                return;
+            } catch (IOException e) {
+                System.err.println("Could not load " + file + ", using the built-in weights: " + e.getMessage());
+            }
+        }
+
         // These are just a guess. The trainer will calculate the best values.
         this.weights = new double[]{
                 0.50,
@@ -130,6 +226,20 @@ public class MomijiManjuBot extends SimpleBot {
         };
     }
 
+    // with this many empty squares or fewer the game is solved exactly. 0 turns the solver off.
+    public void setEndgameEmpties(int empties) {
+        this.endgameEmpties = empties;
+    }
+
+    public PatternEvaluator getPatterns() {
+        return patterns;
+    }
+
+    // keeps the reference like setWeights, so a trainer can let several agents learn into the same tables
+    public void setPatterns(PatternEvaluator patterns) {
+        this.patterns = patterns;
+    }
+
     public void setWeights(double[] newWeights) {
         if (newWeights.length == NUM_FEATURES) {
             this.weights = newWeights;
@@ -0,0 +1,169 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    MoveOrdering decides in which order a search tries the moves of a position. Alpha-beta only cuts off the
+    remaining moves once it has found a good one, so trying the likely best moves first makes the tree a lot
+    smaller. Each move gets a score made up of these sources, strongest first:
+
+    -   HASH_MOVE           the best move the transposition table remembers for the position
+    -   POSITION_WEIGHTS    the static weight of the square, which puts corners early and X-squares late
+    -   KILLERS             the two most recent moves that caused a cutoff at the same ply elsewhere in the tree
+    -   HISTORY             how often (and how deep) a square has caused cutoffs so far in this search
+    -   FEWEST_REPLIES      prefers moves that leave the opponent with few moves (only near the root, it costs
+                            a move generation per move)
+
+    Every source can be switched off on its own, so its effect on node counts can be measured.
+
+ */
+
+import java.util.EnumSet;
+
+public class MoveOrdering {
+
+    public enum Heuristic {
+        HASH_MOVE,
+        POSITION_WEIGHTS,
+        KILLERS,
+        HISTORY,
+        FEWEST_REPLIES
+    }
+
+    private static final int MAX_PLY = 64;
+    private static final int HISTORY_LIMIT = 1 << 10;
+
+    // the fewest replies count is only worth its cost where the remaining subtree is large
+    private static final int FEWEST_REPLIES_MIN_DEPTH = 3;
+
+    private final EnumSet<Heuristic> enabled = EnumSet.allOf(Heuristic.class);
+    private final int[] squareWeights = new int[64];
+
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[][] history = new int[2][64];
+
+    // one move list per ply, so the search does not allocate while walking the tree
+    private final int[][] moves = new int[MAX_PLY][32];
+    private final int[][] scores = new int[MAX_PLY][32];
+
+    public MoveOrdering(int[][] positionWeights) {
+        for (int square = 0; square < 64; square++) {
+            squareWeights[square] = positionWeights[square / 8][square % 8];
+        }
+        clearKillers();
+    }
+
+    public void setEnabled(Heuristic heuristic, boolean on) {
+        if (on) {
+            enabled.add(heuristic);
+        } else {
+            enabled.remove(heuristic);
+        }
+    }
+
+    public boolean isEnabled(Heuristic heuristic) {
+        return enabled.contains(heuristic);
+    }
+
+    // takes over which heuristics are switched on, used to set up the orderings of extra search threads
+    public void copySettingsFrom(MoveOrdering other) {
+        enabled.clear();
+        enabled.addAll(other.enabled);
+    }
+
+    // called before each new move is searched. Killers belong to one search, the history fades out slowly.
+    public void newSearch() {
+        clearKillers();
+        for (int[] colour : history) {
+            for (int square = 0; square < 64; square++) {
+                colour[square] /= 2;
+            }
+        }
+    }
+
+    private void clearKillers() {
+        for (int[] ply : killers) {
+            ply[0] = ply[1] = TranspositionTable.NO_MOVE;
+        }
+    }
+
+    /*
+
+        Scores the legal moves of the mover and stores them for this ply. Returns how many there are; the moves
+        are then taken out best first with next().
+     */
+    public int score(BitBoard board, long validMoves, char mover, int ply, int depth, int hashMove) {
+        int[] plyMoves = moves[ply];
+        int[] plyScores = scores[ply];
+        int count = BitBoard.fillMoves(validMoves, plyMoves);
+
+        boolean useReplies = enabled.contains(Heuristic.FEWEST_REPLIES) && depth >= FEWEST_REPLIES_MIN_DEPTH;
+        int colour = mover == Reversi.BLACK ? 0 : 1;
+        char opponent = Reversi.getOpponent(mover);
+
+        for (int i = 0; i < count; i++) {
+            int move = plyMoves[i];
+            int score = 0;
+
+            if (move == hashMove && enabled.contains(Heuristic.HASH_MOVE)) {
+                score += 1 << 28;
+            }
+            if (enabled.contains(Heuristic.POSITION_WEIGHTS)) {
+                score += squareWeights[move] * 1024;
+            }
+            if (enabled.contains(Heuristic.KILLERS)) {
+                if (move == killers[ply][0]) score += 1 << 16;
+                else if (move == killers[ply][1]) score += 1 << 15;
+            }
+            if (enabled.contains(Heuristic.HISTORY)) {
+                score += history[colour][move];
+            }
+            if (useReplies) {
+                long flipped = board.makeMove(move, mover);
+                score -= Long.bitCount(board.legalMoves(opponent)) * 32;
+                board.undoMove(move, flipped, mover);
+            }
+
+            plyScores[i] = score;
+        }
+        return count;
+    }
+
+    // returns the best of the moves from index onwards and moves it to index
+    public int next(int ply, int index, int count) {
+        int[] plyMoves = moves[ply];
+        int[] plyScores = scores[ply];
+
+        int best = index;
+        for (int i = index + 1; i < count; i++) {
+            if (plyScores[i] > plyScores[best]) {
+                best = i;
+            }
+        }
+
+        int move = plyMoves[best];
+        plyMoves[best] = plyMoves[index];
+        plyMoves[index] = move;
+        int score = plyScores[best];
+        plyScores[best] = plyScores[index];
+        plyScores[index] = score;
+        return move;
+    }
+
+    // a move caused a cutoff: remember it as a killer for this ply and credit its square in the history
+    public void cutoff(int move, char mover, int ply, int depth) {
+        if (killers[ply][0] != move) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = move;
+        }
+
+        int[] colour = history[mover == Reversi.BLACK ? 0 : 1];
+        colour[move] += depth * depth;
+        if (colour[move] >= HISTORY_LIMIT) {
+            for (int square = 0; square < 64; square++) {
+                colour[square] /= 2;
+            }
+        }
+    }
+}
@@ -0,0 +1,478 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    OpeningBook stores which moves were played, and how they turned out, in the first plies of many games, so
+    a bot can play the opening without searching.
+
+    Positions are stored from the point of view of the player to move (their discs, the opponent's discs),
+    and reduced by the 8 symmetries of the board: a position and its rotations and reflections share one entry,
+    kept in whichever orientation sorts first. Each entry is one (position, move) pair with the number of games
+    that played it and the points scored from there (2 for a win, 1 for a draw, 0 for a loss).
+
+    File layout (big-endian):
+
+        int     magic "RVBK"
+        int     version
+        int     number of entries
+        int     CRC32 of the entries
+        entries sorted by (mover discs, opponent discs, move), 25 bytes each:
+            long mover discs, long opponent discs, byte move, int games, int points
+
+    The file is memory-mapped when loaded and looked up by binary search, so the book is never copied onto the
+    heap. Loading only runs the checksum over the mapping, a damaged book is refused rather than played from.
+
+    Building: java course.reversi.OpeningBook <out.book> <selfPlayGames> [log files or folders...]
+    The logs are the "⚫: D3" text files written by Reversi.saveMovesToFile.
+
+ */
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+public class OpeningBook {
+
+    public static final String DEFAULT_FILE = "opening.book";
+
+    private static final int MAGIC = 0x5256424B; // "RVBK"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 16;
+    private static final int ENTRY_BYTES = 25;
+
+    // how deep into the game the book goes
+    public static final int MAX_PLIES = 14;
+
+    // moves seen in fewer games than this are not trusted
+    private static final int MIN_GAMES = 2;
+
+    private final ByteBuffer entries;
+    private final int count;
+
+    private OpeningBook(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_BYTES) {
+            throw new IOException("opening book file is truncated");
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("not an opening book file (or an unsupported version)");
+        }
+        this.count = buffer.getInt(8);
+        if (count < 0 || buffer.capacity() != HEADER_BYTES + (long) count * ENTRY_BYTES) {
+            throw new IOException("opening book file has the wrong size");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(HEADER_BYTES, count * ENTRY_BYTES));
+        if ((int) crc.getValue() != buffer.getInt(12)) {
+            throw new IOException("opening book checksum does not match");
+        }
+        this.entries = buffer;
+    }
+
+    public static OpeningBook load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new OpeningBook(buffer);
+        }
+    }
+
+    // loads DEFAULT_FILE from the working directory, or returns null when there is no usable book
+    public static OpeningBook loadDefault() {
+        Path file = Paths.get(DEFAULT_FILE);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return load(file);
+        } catch (IOException e) {
+            System.err.println("Could not load the opening book: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /*
+
+        Returns the book square for the player in this position, or -1 when the position is not in the book
+        (or none of its moves has been played often enough). The move with the best average points wins.
+     */
+    public int lookup(BitBoard board, char player) {
+        if (64 - board.empties() - 4 >= MAX_PLIES) {
+            return -1;
+        }
+
+        long mover = board.discs(player);
+        long opponent = board.discs(Reversi.getOpponent(player));
+        int symmetry = Symmetry.canonical(mover, opponent);
+        long m = Symmetry.transform(mover, symmetry);
+        long o = Symmetry.transform(opponent, symmetry);
+
+        int index = firstEntry(m, o);
+        int bestMove = -1;
+        double bestValue = -1;
+        for (int i = index; i < count && moverAt(i) == m && opponentAt(i) == o; i++) {
+            int games = gamesAt(i);
+            if (games < MIN_GAMES) {
+                continue;
+            }
+            // a small prior keeps a single lucky game from looking better than a well tested move
+            double value = (pointsAt(i) + 1.0) / (2.0 * games + 2.0);
+            if (value > bestValue) {
+                bestValue = value;
+                bestMove = moveAt(i);
+            }
+        }
+        if (bestMove < 0) {
+            return -1;
+        }
+
+        // map the move back from the stored orientation to the actual board
+        long legal = board.legalMoves(player);
+        while (legal != 0) {
+            int square = Long.numberOfTrailingZeros(legal);
+            legal &= legal - 1;
+            if (Symmetry.transformSquare(square, symmetry) == bestMove) {
+                return square;
+            }
+        }
+        return -1;
+    }
+
+    // index of the first entry that is not smaller than (m, o), found by binary search
+    private int firstEntry(long m, long o) {
+        int low = 0, high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int cmp = Long.compareUnsigned(moverAt(middle), m);
+            if (cmp == 0) {
+                cmp = Long.compareUnsigned(opponentAt(middle), o);
+            }
+            if (cmp < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int offset(int index) {
+        return HEADER_BYTES + index * ENTRY_BYTES;
+    }
+
+    private long moverAt(int index) {
+        return entries.getLong(offset(index));
+    }
+
+    private long opponentAt(int index) {
+        return entries.getLong(offset(index) + 8);
+    }
+
+    private int moveAt(int index) {
+        return entries.get(offset(index) + 16);
+    }
+
+    private int gamesAt(int index) {
+        return entries.getInt(offset(index) + 17);
+    }
+
+    private int pointsAt(int index) {
+        return entries.getInt(offset(index) + 21);
+    }
+
+    /*
+
+        The 8 symmetries of the board. Symmetry number t applies a transpose (bit 2), then a vertical flip
+        (bit 1), then a horizontal mirror (bit 0).
+     */
+    static final class Symmetry {
+
+        private Symmetry() {
+        }
+
+        static long transform(long x, int symmetry) {
+            if ((symmetry & 4) != 0) x = transpose(x);
+            if ((symmetry & 2) != 0) x = Long.reverseBytes(x);
+            if ((symmetry & 1) != 0) x = mirror(x);
+            return x;
+        }
+
+        static int transformSquare(int square, int symmetry) {
+            return Long.numberOfTrailingZeros(transform(BitBoard.bit(square), symmetry));
+        }
+
+        // the symmetry that gives the smallest (mover, opponent) pair
+        static int canonical(long mover, long opponent) {
+            int best = 0;
+            long bestMover = mover, bestOpponent = opponent;
+            for (int symmetry = 1; symmetry < 8; symmetry++) {
+                long m = transform(mover, symmetry);
+                long o = transform(opponent, symmetry);
+                int cmp = Long.compareUnsigned(m, bestMover);
+                if (cmp < 0 || (cmp == 0 && Long.compareUnsigned(o, bestOpponent) < 0)) {
+                    best = symmetry;
+                    bestMover = m;
+                    bestOpponent = o;
+                }
+            }
+            return best;
+        }
+
+        // column c goes to column 7 - c
+        private static long mirror(long x) {
+            x = ((x >>> 1) & 0x5555555555555555L) | ((x & 0x5555555555555555L) << 1);
+            x = ((x >>> 2) & 0x3333333333333333L) | ((x & 0x3333333333333333L) << 2);
+            x = ((x >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((x & 0x0F0F0F0F0F0F0F0FL) << 4);
+            return x;
+        }
+
+        // square (row, col) goes to (col, row)
+        private static long transpose(long x) {
+            long t;
+            t = 0x0F0F0F0F00000000L & (x ^ (x << 28));
+            x ^= t ^ (t >>> 28);
+            t = 0x3333000033330000L & (x ^ (x << 14));
+            x ^= t ^ (t >>> 14);
+            t = 0x5500550055005500L & (x ^ (x << 7));
+            x ^= t ^ (t >>> 7);
+            return x;
+        }
+    }
+
+    /*
+
+        Collects games and writes them out as a book file. Only the first MAX_PLIES plies of each game are used.
+     */
+    public static class Builder {
+
+        // (mover, opponent, move) -> {games, points}, kept in the order of the file
+        private final TreeMap<Key, int[]> stats = new TreeMap<>();
+        private int gamesAdded = 0;
+
+        private static final class Key implements Comparable<Key> {
+            final long mover;
+            final long opponent;
+            final int move;
+
+            Key(long mover, long opponent, int move) {
+                this.mover = mover;
+                this.opponent = opponent;
+                this.move = move;
+            }
+
+            @Override
+            public int compareTo(Key other) {
+                int cmp = Long.compareUnsigned(mover, other.mover);
+                if (cmp == 0) cmp = Long.compareUnsigned(opponent, other.opponent);
+                if (cmp == 0) cmp = Integer.compare(move, other.move);
+                return cmp;
+            }
+        }
+
+        public int getGamesAdded() {
+            return gamesAdded;
+        }
+
+        /*
+
+            Adds a game given as the mover and square of each move. Replay stops at the first move that is not
+            legal, which drops the simulated moves that older log files contain. Games that were not replayed to
+            the end still count as played but score as a draw for both sides.
+         */
+        public void addGame(char[] movers, int[] squares, int length) {
+            BitBoard board = new BitBoard();
+            int[] plyMovers = new int[MAX_PLIES];
+            long[] plyMoverDiscs = new long[MAX_PLIES];
+            long[] plyOpponentDiscs = new long[MAX_PLIES];
+            int[] plySquares = new int[MAX_PLIES];
+            int plies = 0;
+
+            int played = 0;
+            for (int i = 0; i < length; i++) {
+                char mover = movers[i];
+                if (!board.isLegal(squares[i], mover)) {
+                    break;
+                }
+                if (plies < MAX_PLIES) {
+                    plyMovers[plies] = mover;
+                    plyMoverDiscs[plies] = board.discs(mover);
+                    plyOpponentDiscs[plies] = board.discs(Reversi.getOpponent(mover));
+                    plySquares[plies] = squares[i];
+                    plies++;
+                }
+                board.makeMove(squares[i], mover);
+                played++;
+            }
+            if (plies == 0) {
+                return;
+            }
+
+            boolean finished = played == length
+                    && board.legalMoves(Reversi.BLACK) == 0 && board.legalMoves(Reversi.WHITE) == 0;
+            int blackMargin = board.count(Reversi.BLACK) - board.count(Reversi.WHITE);
+
+            for (int ply = 0; ply < plies; ply++) {
+                int points = 1;
+                if (finished && blackMargin != 0) {
+                    boolean blackWon = blackMargin > 0;
+                    points = (plyMovers[ply] == Reversi.BLACK) == blackWon ? 2 : 0;
+                }
+                add(plyMoverDiscs[ply], plyOpponentDiscs[ply], plySquares[ply], points);
+            }
+            gamesAdded++;
+        }
+
+        private void add(long mover, long opponent, int square, int points) {
+            int symmetry = Symmetry.canonical(mover, opponent);
+            Key key = new Key(Symmetry.transform(mover, symmetry), Symmetry.transform(opponent, symmetry),
+                    Symmetry.transformSquare(square, symmetry));
+            int[] entry = stats.computeIfAbsent(key, k -> new int[2]);
+            entry[0]++;
+            entry[1] += points;
+        }
+
+        /*
+
+            Plays games between two bots and adds them. The first randomPlies moves of each game are random so
+            the games do not all follow the same line.
+         */
+        public void addSelfPlay(SimpleBot black, SimpleBot white, int games, int randomPlies, long seed) {
+            Random random = new Random(seed);
+            int[] moves = new int[32];
+            for (int game = 0; game < games; game++) {
+                BitBoard board = new BitBoard();
+                char[] movers = new char[60];
+                int[] squares = new int[60];
+                int length = 0;
+                char player = Reversi.BLACK;
+
+                while (board.legalMoves(Reversi.BLACK) != 0 || board.legalMoves(Reversi.WHITE) != 0) {
+                    int n = board.generateMoves(player, moves);
+                    if (n > 0) {
+                        int square;
+                        if (length < randomPlies) {
+                            square = moves[random.nextInt(n)];
+                        } else {
+                            int[] move = (player == Reversi.BLACK ? black : white).getBotMove(board, player);
+                            square = BitBoard.square(move[0], move[1]);
+                        }
+                        board.makeMove(square, player);
+                        movers[length] = player;
+                        squares[length] = square;
+                        length++;
+                    }
+                    player = Reversi.getOpponent(player);
+                }
+                addGame(movers, squares, length);
+            }
+        }
+
+        // adds a log file written by Reversi.saveMovesToFile
+        public void addLogFile(Path file) throws IOException {
+            char[] movers = new char[128];
+            int[] squares = new int[128];
+            int length = 0;
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null && length < movers.length) {
+                    // move lines look like "⚫: D3"
+                    int colon = line.indexOf(": ");
+                    if (colon != 1 || line.length() != 5) {
+                        continue;
+                    }
+                    char mover = line.charAt(0);
+                    int square = BitBoard.parseSquare(line.substring(3));
+                    if ((mover == Reversi.BLACK || mover == Reversi.WHITE) && square >= 0) {
+                        movers[length] = mover;
+                        squares[length] = square;
+                        length++;
+                    }
+                }
+            }
+            addGame(movers, squares, length);
+        }
+
+        public void write(Path file) throws IOException {
+            // the checksum goes in the header, so the entries are laid out in memory first
+            ByteBuffer body = ByteBuffer.allocate(stats.size() * ENTRY_BYTES);
+            for (Map.Entry<Key, int[]> entry : stats.entrySet()) {
+                Key key = entry.getKey();
+                body.putLong(key.mover);
+                body.putLong(key.opponent);
+                body.put((byte) key.move);
+                body.putInt(entry.getValue()[0]);
+                body.putInt(entry.getValue()[1]);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(body.array());
+
+            try (OutputStream stream = Files.newOutputStream(file);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(stats.size());
+                out.writeInt((int) crc.getValue());
+                out.write(body.array());
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java course.reversi.OpeningBook <out.book> <selfPlayGames> [log files or folders...]");
+            return;
+        }
+
+        Builder builder = new Builder();
+
+        for (int i = 2; i < args.length; i++) {
+            Path path = Paths.get(args[i]);
+            List<Path> files = new ArrayList<>();
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> listing = Files.list(path)) {
+                    listing.filter(p -> p.getFileName().toString().endsWith(".txt")).forEach(files::add);
+                }
+            } else {
+                files.add(path);
+            }
+            for (Path file : files) {
+                builder.addLogFile(file);
+            }
+        }
+        int logGames = builder.getGamesAdded();
+
+        int selfPlayGames = Integer.parseInt(args[1]);
+        if (selfPlayGames > 0) {
+            CastellaBot black = new CastellaBot();
+            CastellaBot white = new CastellaBot();
+            black.setMaxDepth(6);
+            white.setMaxDepth(6);
+            builder.addSelfPlay(black, white, selfPlayGames, 4, 1L);
+        }
+
+        builder.write(Paths.get(args[0]));
+        System.out.println("Opening book written to " + args[0] + ": " + builder.stats.size() + " entries from "
+                + logGames + " logged and " + selfPlayGames + " self-play games");
+    }
+}
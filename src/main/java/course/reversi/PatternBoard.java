@@ -0,0 +1,96 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    PatternBoard is an EvalBoard that also keeps the base-3 index of every PatternEvaluator pattern instance.
+    Indices are kept from Black's side (1 black, 2 white). A move only touches the instances that contain
+    the placed square or a flipped square, and each of those changes by one digit:
+
+    -   placed:     empty -> mover, the digit goes from 0 to 1 (Black) or 2 (White)
+    -   flipped:    the digit goes from 2 to 1 (Black moved) or from 1 to 2 (White moved)
+
+    undoMove applies the same changes the other way round.
+
+ */
+
+public class PatternBoard extends EvalBoard {
+
+    private final int[] indices = new int[PatternEvaluator.INSTANCE_COUNT];
+
+    public PatternBoard() {
+        super();
+        recomputePatterns();
+    }
+
+    public PatternBoard(int[][] positionWeights) {
+        super(positionWeights);
+        recomputePatterns();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        recomputePatterns();
+    }
+
+    @Override
+    public void copyFrom(BitBoard other) {
+        super.copyFrom(other);
+        recomputePatterns();
+    }
+
+    @Override
+    public long makeMove(int square, char player) {
+        long flipped = super.makeMove(square, player);
+        boolean black = player == Reversi.BLACK;
+        addDigit(square, black ? 1 : 2);
+        addFlips(flipped, black ? -1 : 1);
+        return flipped;
+    }
+
+    @Override
+    public void undoMove(int square, long flipped, char player) {
+        super.undoMove(square, flipped, player);
+        boolean black = player == Reversi.BLACK;
+        addDigit(square, black ? -1 : -2);
+        addFlips(flipped, black ? 1 : -1);
+    }
+
+    // the index of one instance, from Black's side
+    int patternIndex(int instance) {
+        return indices[instance];
+    }
+
+    private void addFlips(long flipped, int change) {
+        while (flipped != 0) {
+            addDigit(Long.numberOfTrailingZeros(flipped), change);
+            flipped &= flipped - 1;
+        }
+    }
+
+    private void addDigit(int square, int change) {
+        int[] instances = PatternEvaluator.SQUARE_INSTANCES[square];
+        int[] powers = PatternEvaluator.SQUARE_POWERS[square];
+        for (int i = 0; i < instances.length; i++) {
+            indices[instances[i]] += change * powers[i];
+        }
+    }
+
+    // full recount, the same null check as in EvalBoard since the super constructor calls reset()
+    private void recomputePatterns() {
+        if (indices == null) {
+            return;
+        }
+        for (int instance = 0; instance < indices.length; instance++) {
+            int[] squares = PatternEvaluator.INSTANCE_SQUARES[instance];
+            int index = 0;
+            for (int i = squares.length - 1; i >= 0; i--) {
+                long b = bit(squares[i]);
+                index = index * 3 + ((black & b) != 0 ? 1 : (white & b) != 0 ? 2 : 0);
+            }
+            indices[instance] = index;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    PatternEvaluator scores a position by looking up small groups of squares ("patterns") in weight tables.
+    Each pattern is read as a number in base 3 (0 empty, 1 own disc, 2 opponent disc, first square lowest),
+    and that number is the index into the pattern's table. The value of a position is the sum of the table
+    entries of all pattern instances, so a whole evaluation is one lookup per instance.
+
+    The patterns, each placed on the board in every orientation the 8 symmetries give it:
+
+    -   EDGE_2X         an edge plus the two X-squares next to it                   4 instances, 3^10 entries
+    -   CORNER_3X3      the 3x3 block in a corner                                   4 instances, 3^9 entries
+    -   CORNER_2X5      a 2x5 block in a corner, along both edges                   8 instances, 3^10 entries
+    -   DIAGONAL_8..4   the diagonals of length 8 down to 4                         2 or 4 instances each
+
+    All instances of a pattern share one table. PatternBoard keeps every instance's index up to date as discs
+    are placed and flipped, and the tables are learned by TDBotTrainer (they start at zero, so an untrained
+    evaluator adds nothing).
+
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PatternEvaluator {
+
+    public enum Pattern {
+        EDGE_2X(0, 1, 2, 3, 4, 5, 6, 7, 9, 14),
+        CORNER_3X3(0, 1, 2, 8, 9, 10, 16, 17, 18),
+        CORNER_2X5(0, 1, 2, 3, 4, 8, 9, 10, 11, 12),
+        DIAGONAL_8(0, 9, 18, 27, 36, 45, 54, 63),
+        DIAGONAL_7(1, 10, 19, 28, 37, 46, 55),
+        DIAGONAL_6(2, 11, 20, 29, 38, 47),
+        DIAGONAL_5(3, 12, 21, 30, 39),
+        DIAGONAL_4(4, 13, 22, 31);
+
+        private final int[] squares;
+
+        Pattern(int... squares) {
+            this.squares = squares;
+        }
+
+        public int length() {
+            return squares.length;
+        }
+
+        public int tableSize() {
+            return POWERS[squares.length];
+        }
+    }
+
+    private static final int[] POWERS = { 1, 3, 9, 27, 81, 243, 729, 2187, 6561, 19683, 59049 };
+
+    // every placed pattern: its type and the squares it reads, in digit order
+    static final int INSTANCE_COUNT;
+    static final int[] INSTANCE_PATTERN;
+    static final int[][] INSTANCE_SQUARES;
+
+    // for each square, the instances it belongs to and its digit weight (3^position) in each of them
+    static final int[][] SQUARE_INSTANCES = new int[64][];
+    static final int[][] SQUARE_POWERS = new int[64][];
+
+    // per pattern length, the index with own and opponent discs swapped, used to read a table for White
+    private static final int[][] SWAPPED = new int[POWERS.length][];
+
+    static {
+        List<int[]> squares = new ArrayList<>();
+        List<Integer> types = new ArrayList<>();
+        for (Pattern pattern : Pattern.values()) {
+            List<int[]> seen = new ArrayList<>();
+            for (int symmetry = 0; symmetry < 8; symmetry++) {
+                int[] placed = new int[pattern.squares.length];
+                for (int i = 0; i < placed.length; i++) {
+                    placed[i] = OpeningBook.Symmetry.transformSquare(pattern.squares[i], symmetry);
+                }
+                // symmetries that map the pattern onto itself would only count the same squares twice
+                int[] sorted = placed.clone();
+                Arrays.sort(sorted);
+                if (seen.stream().noneMatch(s -> Arrays.equals(s, sorted))) {
+                    seen.add(sorted);
+                    squares.add(placed);
+                    types.add(pattern.ordinal());
+                }
+            }
+        }
+
+        INSTANCE_COUNT = squares.size();
+        INSTANCE_SQUARES = squares.toArray(new int[0][]);
+        INSTANCE_PATTERN = new int[INSTANCE_COUNT];
+        for (int i = 0; i < INSTANCE_COUNT; i++) {
+            INSTANCE_PATTERN[i] = types.get(i);
+        }
+
+        for (int square = 0; square < 64; square++) {
+            List<int[]> entries = new ArrayList<>();
+            for (int instance = 0; instance < INSTANCE_COUNT; instance++) {
+                int[] placed = INSTANCE_SQUARES[instance];
+                for (int i = 0; i < placed.length; i++) {
+                    if (placed[i] == square) {
+                        entries.add(new int[] { instance, POWERS[i] });
+                    }
+                }
+            }
+            SQUARE_INSTANCES[square] = entries.stream().mapToInt(e -> e[0]).toArray();
+            SQUARE_POWERS[square] = entries.stream().mapToInt(e -> e[1]).toArray();
+        }
+
+        for (Pattern pattern : Pattern.values()) {
+            int length = pattern.length();
+            if (SWAPPED[length] != null) {
+                continue;
+            }
+            int[] swapped = new int[POWERS[length]];
+            for (int index = 0; index < swapped.length; index++) {
+                int rest = index;
+                int result = 0;
+                for (int i = 0; i < length; i++) {
+                    int digit = rest % 3;
+                    rest /= 3;
+                    result += (digit == 0 ? 0 : 3 - digit) * POWERS[i];
+                }
+                swapped[index] = result;
+            }
+            SWAPPED[length] = swapped;
+        }
+    }
+
+    private final double[][] tables = new double[Pattern.values().length][];
+
+    public PatternEvaluator() {
+        for (Pattern pattern : Pattern.values()) {
+            tables[pattern.ordinal()] = new double[pattern.tableSize()];
+        }
+    }
+
+    public static int instanceCount() {
+        return INSTANCE_COUNT;
+    }
+
+    // the tables themselves, indexed by Pattern.ordinal(), for saving and loading
+    public double[][] getTables() {
+        return tables;
+    }
+
+    // the value of the position for the player
+    public double evaluate(PatternBoard board, char player) {
+        double value = 0;
+        boolean black = player == Reversi.BLACK;
+        for (int instance = 0; instance < INSTANCE_COUNT; instance++) {
+            int pattern = INSTANCE_PATTERN[instance];
+            int index = board.patternIndex(instance);
+            value += tables[pattern][black ? index : SWAPPED[INSTANCE_SQUARES[instance].length][index]];
+        }
+        return value;
+    }
+
+    // writes the table index of every instance, as seen by the player, so they can be kept for training
+    public void indices(PatternBoard board, char player, int[] out) {
+        boolean black = player == Reversi.BLACK;
+        for (int instance = 0; instance < INSTANCE_COUNT; instance++) {
+            int index = board.patternIndex(instance);
+            out[instance] = black ? index : SWAPPED[INSTANCE_SQUARES[instance].length][index];
+        }
+    }
+
+    // the same, written into slot of per-instance columns (the layout ReplayBuffer keeps)
+    void indices(PatternBoard board, char player, int[][] columns, int slot) {
+        boolean black = player == Reversi.BLACK;
+        for (int instance = 0; instance < INSTANCE_COUNT; instance++) {
+            int index = board.patternIndex(instance);
+            columns[instance][slot] = black ? index : SWAPPED[INSTANCE_SQUARES[instance].length][index];
+        }
+    }
+
+    /*
+
+        How much the pattern value for the player changes if the player plays square and flips these discs,
+        without touching the board. Only the instances containing one of the changed squares are looked at.
+        The scratch holds the per-instance index changes, one per thread (or per bot).
+     */
+    public double moveDelta(PatternBoard board, char player, int square, long flipped, Scratch scratch) {
+        boolean black = player == Reversi.BLACK;
+        int[] change = scratch.change;
+        int[] touched = scratch.touched;
+        int touchedCount = 0;
+
+        // the same digit changes PatternBoard.makeMove applies
+        long squares = flipped | BitBoard.bit(square);
+        while (squares != 0) {
+            int s = Long.numberOfTrailingZeros(squares);
+            squares &= squares - 1;
+            int digit = s == square ? (black ? 1 : 2) : (black ? -1 : 1);
+            int[] instances = SQUARE_INSTANCES[s];
+            int[] powers = SQUARE_POWERS[s];
+            for (int i = 0; i < instances.length; i++) {
+                int instance = instances[i];
+                if (change[instance] == 0) {
+                    touched[touchedCount++] = instance;
+                }
+                change[instance] += digit * powers[i];
+            }
+        }
+
+        double delta = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int instance = touched[i];
+            int before = board.patternIndex(instance);
+            int after = before + change[instance];
+            change[instance] = 0;
+            if (!black) {
+                int[] swapped = SWAPPED[INSTANCE_SQUARES[instance].length];
+                before = swapped[before];
+                after = swapped[after];
+            }
+            double[] table = tables[INSTANCE_PATTERN[instance]];
+            delta += table[after] - table[before];
+        }
+        return delta;
+    }
+
+    // working space for moveDelta, so the evaluator itself can be shared between threads
+    public static final class Scratch {
+        private final int[] change = new int[INSTANCE_COUNT];
+        private final int[] touched = new int[INSTANCE_COUNT];
+    }
+
+    // the table an instance reads
+    double[] instanceTable(int instance) {
+        return tables[INSTANCE_PATTERN[instance]];
+    }
+
+    public double evaluate(int[] indices) {
+        double value = 0;
+        for (int instance = 0; instance < INSTANCE_COUNT; instance++) {
+            value += tables[INSTANCE_PATTERN[instance]][indices[instance]];
+        }
+        return value;
+    }
+
+    // a gradient step: every entry the position used moves by delta
+    public void update(int[] indices, double delta) {
+        for (int instance = 0; instance < INSTANCE_COUNT; instance++) {
+            tables[INSTANCE_PATTERN[instance]][indices[instance]] += delta;
+        }
+    }
+}
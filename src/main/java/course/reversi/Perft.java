@@ -0,0 +1,348 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    Perft counts the leaf nodes of the full game tree to a given depth. Two move generators that follow the
+    same rules give the same counts at every depth, so it is the check to run after any change to move
+    generation or move making, and the nodes per second show what the change did to speed.
+
+    Rules of the count: a pass is a ply of its own, and a position where neither side can move is a leaf
+    however much depth is left.
+
+    Backends:
+
+    -   ARRAY       the char[][] routines of Reversi (getValidMoves, makeMove) the UI uses
+    -   BITBOARD    BitBoard with makeMove/undoMove, what the bots search with
+    -   REFERENCE   a plain scan of the 8 directions from every empty square on a char[][], written
+                    straight from the rules and sharing no code with the others
+
+    Usage: java course.reversi.Perft <depth> [--divide] [--backend=array|bitboard|reference|all]
+                                             [--moves=D3,C3,...] [--position=<64 x o - chars><x|o>]
+
+    --moves plays the moves from the start position, --position gives a board row by row from A1 (x black,
+    o white, - empty) followed by the side to move.
+
+ */
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Perft {
+
+    public enum Backend {
+        ARRAY,
+        BITBOARD,
+        REFERENCE
+    }
+
+    private static final int MAX_PLY = 128; // passes make the tree deeper than the 60 moves of a game
+
+    public static long perft(BitBoard board, char player, int depth, Backend backend) {
+        return walker(board, player, backend).perft(0, depth, false);
+    }
+
+    // node count below each root move (or the pass), in move generation order
+    public static Map<String, Long> divide(BitBoard board, char player, int depth, Backend backend) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        if (depth < 1) {
+            return counts;
+        }
+        Walker walker = walker(board, player, backend);
+        int[] moves = new int[32];
+        int n = walker.moves(0, moves);
+        if (n == 0) {
+            if (board.legalMoves(Reversi.getOpponent(player)) == 0) {
+                counts.put("end", 1L); // the game is over, the root itself is the only leaf
+                return counts;
+            }
+            walker.play(0, -1);
+            counts.put("pass", walker.perft(1, depth - 1, true));
+            walker.undo(0, -1);
+            return counts;
+        }
+        for (int i = 0; i < n; i++) {
+            walker.play(0, moves[i]);
+            counts.put(BitBoard.squareName(moves[i]), walker.perft(1, depth - 1, false));
+            walker.undo(0, moves[i]);
+        }
+        return counts;
+    }
+
+    private static Walker walker(BitBoard board, char player, Backend backend) {
+        switch (backend) {
+            case ARRAY:
+                return new ArrayWalker(board, player);
+            case BITBOARD:
+                return new BitBoardWalker(board, player);
+            default:
+                return new ReferenceWalker(board, player);
+        }
+    }
+
+    /*
+
+        The tree walk shared by all backends. A backend only has to list the moves of the side to move at a ply,
+        and play or take back a move (square -1 is a pass) going from one ply to the next.
+     */
+    private abstract static class Walker {
+
+        private final int[][] moveLists = new int[MAX_PLY][32];
+
+        abstract int moves(int ply, int[] out);
+
+        abstract void play(int ply, int square);
+
+        abstract void undo(int ply, int square);
+
+        long perft(int ply, int depth, boolean passed) {
+            if (depth == 0) {
+                return 1;
+            }
+            int[] moves = moveLists[ply];
+            int n = moves(ply, moves);
+            if (n == 0) {
+                if (passed) {
+                    return 1; // neither side can move, the game is over
+                }
+                play(ply, -1);
+                long nodes = perft(ply + 1, depth - 1, true);
+                undo(ply, -1);
+                return nodes;
+            }
+            if (depth == 1) {
+                return n;
+            }
+            long nodes = 0;
+            for (int i = 0; i < n; i++) {
+                play(ply, moves[i]);
+                nodes += perft(ply + 1, depth - 1, false);
+                undo(ply, moves[i]);
+            }
+            return nodes;
+        }
+    }
+
+    private static final class BitBoardWalker extends Walker {
+        private final BitBoard board;
+        private final char[] players = new char[MAX_PLY + 1];
+        private final long[] flips = new long[MAX_PLY];
+
+        BitBoardWalker(BitBoard start, char player) {
+            this.board = start.copy();
+            players[0] = player;
+        }
+
+        @Override
+        int moves(int ply, int[] out) {
+            return board.generateMoves(players[ply], out);
+        }
+
+        @Override
+        void play(int ply, int square) {
+            if (square >= 0) {
+                flips[ply] = board.makeMove(square, players[ply]);
+            }
+            players[ply + 1] = Reversi.getOpponent(players[ply]);
+        }
+
+        @Override
+        void undo(int ply, int square) {
+            if (square >= 0) {
+                board.undoMove(square, flips[ply], players[ply]);
+            }
+        }
+    }
+
+    // the char[][] backends have no undo, every ply gets its own copy of the board
+    private abstract static class CopyingWalker extends Walker {
+        final char[][][] boards = new char[MAX_PLY + 1][][];
+        final char[] players = new char[MAX_PLY + 1];
+
+        CopyingWalker(BitBoard start, char player) {
+            for (int ply = 0; ply <= MAX_PLY; ply++) {
+                boards[ply] = new char[8][8];
+            }
+            start.toArray(boards[0]);
+            players[0] = player;
+        }
+
+        @Override
+        void play(int ply, int square) {
+            char[][] child = boards[ply + 1];
+            for (int row = 0; row < 8; row++) {
+                System.arraycopy(boards[ply][row], 0, child[row], 0, 8);
+            }
+            if (square >= 0) {
+                makeMove(child, square / 8, square % 8, players[ply]);
+            }
+            players[ply + 1] = Reversi.getOpponent(players[ply]);
+        }
+
+        @Override
+        void undo(int ply, int square) {
+        }
+
+        abstract void makeMove(char[][] board, int row, int col, char player);
+    }
+
+    private static final class ArrayWalker extends CopyingWalker {
+        ArrayWalker(BitBoard start, char player) {
+            super(start, player);
+        }
+
+        @Override
+        int moves(int ply, int[] out) {
+            return Reversi.getValidMoves(boards[ply], players[ply], out);
+        }
+
+        @Override
+        void makeMove(char[][] board, int row, int col, char player) {
+            Reversi.makeMove(board, row, col, player);
+        }
+    }
+
+    private static final class ReferenceWalker extends CopyingWalker {
+        private static final int[][] DIRECTIONS = {
+                {-1, -1}, {-1, 0}, {-1, 1}, {0, -1}, {0, 1}, {1, -1}, {1, 0}, {1, 1}
+        };
+
+        ReferenceWalker(BitBoard start, char player) {
+            super(start, player);
+        }
+
+        @Override
+        int moves(int ply, int[] out) {
+            char[][] board = boards[ply];
+            int n = 0;
+            for (int row = 0; row < 8; row++) {
+                for (int col = 0; col < 8; col++) {
+                    if (board[row][col] == Reversi.EMPTY && flipsAny(board, row, col, players[ply])) {
+                        out[n++] = row * 8 + col;
+                    }
+                }
+            }
+            return n;
+        }
+
+        private static boolean flipsAny(char[][] board, int row, int col, char player) {
+            for (int[] d : DIRECTIONS) {
+                if (run(board, row, col, d[0], d[1], player) > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // how many opponent pieces lie between (row, col) and the next own piece in this direction, 0 if none
+        private static int run(char[][] board, int row, int col, int dr, int dc, char player) {
+            char opponent = Reversi.getOpponent(player);
+            int r = row + dr, c = col + dc, count = 0;
+            while (r >= 0 && r < 8 && c >= 0 && c < 8 && board[r][c] == opponent) {
+                r += dr;
+                c += dc;
+                count++;
+            }
+            if (r >= 0 && r < 8 && c >= 0 && c < 8 && board[r][c] == player) {
+                return count;
+            }
+            return 0;
+        }
+
+        @Override
+        void makeMove(char[][] board, int row, int col, char player) {
+            for (int[] d : DIRECTIONS) {
+                int count = run(board, row, col, d[0], d[1], player);
+                for (int i = 1; i <= count; i++) {
+                    board[row + i * d[0]][col + i * d[1]] = player;
+                }
+            }
+            board[row][col] = player;
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: java course.reversi.Perft <depth> [--divide] [--backend=array|bitboard|reference|all]"
+                    + " [--moves=D3,C3,...] [--position=<64 x o - chars><x|o>]");
+            return;
+        }
+
+        int depth = Integer.parseInt(args[0]);
+        boolean divide = false;
+        List<Backend> backends = new ArrayList<>(List.of(Backend.values()));
+        BitBoard board = new BitBoard();
+        char player = Reversi.BLACK;
+
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--divide")) {
+                divide = true;
+            } else if (arg.startsWith("--backend=")) {
+                String name = arg.substring("--backend=".length());
+                backends.clear();
+                if (name.equals("all")) {
+                    backends.addAll(List.of(Backend.values()));
+                } else {
+                    backends.add(Backend.valueOf(name.toUpperCase()));
+                }
+            } else if (arg.startsWith("--moves=")) {
+                board = new BitBoard();
+                player = Reversi.BLACK;
+                for (String move : arg.substring("--moves=".length()).split(",")) {
+                    if (board.legalMoves(player) == 0) {
+                        player = Reversi.getOpponent(player);
+                    }
+                    int square = BitBoard.parseSquare(move.trim().toUpperCase());
+                    if (square < 0 || !board.isLegal(square, player)) {
+                        throw new IllegalArgumentException("illegal move " + move);
+                    }
+                    board.makeMove(square, player);
+                    player = Reversi.getOpponent(player);
+                }
+            } else if (arg.startsWith("--position=")) {
+                String position = arg.substring("--position=".length()).toLowerCase();
+                if (position.length() != 65) {
+                    throw new IllegalArgumentException("a position is 64 squares and the side to move");
+                }
+                long black = 0, white = 0;
+                for (int square = 0; square < 64; square++) {
+                    char c = position.charAt(square);
+                    if (c == 'x') black |= BitBoard.bit(square);
+                    else if (c == 'o') white |= BitBoard.bit(square);
+                }
+                board = new BitBoard(black, white);
+                player = position.charAt(64) == 'x' ? Reversi.BLACK : Reversi.WHITE;
+            } else {
+                throw new IllegalArgumentException("unknown option " + arg);
+            }
+        }
+
+        System.out.printf("perft %d, %s to move, %d empty squares%n", depth, player, board.empties());
+        Long expected = null;
+        for (Backend backend : backends) {
+            long start = System.nanoTime();
+            long nodes;
+            if (divide) {
+                nodes = 0;
+                for (Map.Entry<String, Long> entry : divide(board, player, depth, backend).entrySet()) {
+                    System.out.printf("  %-4s %,16d%n", entry.getKey(), entry.getValue());
+                    nodes += entry.getValue();
+                }
+            } else {
+                nodes = perft(board, player, depth, backend);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-10s %,16d nodes %10.3f s %,16.0f nodes/s%n",
+                    backend, nodes, seconds, nodes / Math.max(seconds, 1e-9));
+
+            if (expected != null && expected != nodes) {
+                System.out.println("MISMATCH: " + backend + " counts " + nodes + ", expected " + expected);
+            }
+            expected = nodes;
+        }
+    }
+}
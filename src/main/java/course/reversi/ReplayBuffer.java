@@ -0,0 +1,212 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    ReplayBuffer holds the positions TDBotTrainer learns from, in preallocated primitive arrays laid out as
+    struct-of-arrays: one array per feature and one per pattern instance, each with a slot per position, plus
+    the TD target of every position. A mini-batch is drawn as independent random slots (consecutive slots are
+    consecutive positions of one game, far too alike to make a useful batch) and gathered into batch columns
+    of the same layout, so computing its values and gradients is a handful of tight loops over plain arrays
+    that the JIT can vectorize:
+
+    -   values:     for each feature, value[i] += weight * feature[i]; then one table lookup per pattern
+    -   gradient:   for each feature, the mean of error[i] * feature[i]
+
+    Pattern table entries are sparse: most appear in one or two positions of a batch, a few (an empty diagonal
+    early in the game) in nearly all of them. Each entry therefore moves by the mean error of the positions
+    that used it, which keeps the common entries from taking a whole batch's worth of error in one step.
+
+    A game is written into contiguous slots as it is played. When it ends its targets are set (the value of the
+    agent's next position, the final reward for the last one) and the positions become available for batches.
+    The buffer is a ring: once full, the oldest games are overwritten.
+
+ */
+
+import java.util.Random;
+
+public class ReplayBuffer {
+
+    // a game gives the agent at most this many positions, so a game always fits before the end of the arrays
+    private static final int MAX_GAME_STATES = 64;
+
+    private final int capacity;
+    private final double[][] features;
+    private final int[][] patterns;
+    private final double[] targets;
+
+    // the current mini-batch, gathered from the slots above. Grown on demand.
+    private final double[][] batchFeatures;
+    private final int[][] batchPatterns;
+    private double[] batchTargets = new double[0];
+
+    // scratch space for batch values and errors
+    private final double[] values;
+    private final double[] featureScratch;
+
+    // per pattern table, how many positions of the current batch used each entry. Zeroed again after use.
+    private final int[][] entryCounts;
+
+    private int head = 0;       // next slot to write
+    private int end = 0;        // slots [0, end) hold finished games
+    private int gameStart = 0;
+
+    public ReplayBuffer(int capacity, int featureCount) {
+        this.capacity = Math.max(capacity, MAX_GAME_STATES * 2);
+        this.features = new double[featureCount][this.capacity];
+        this.patterns = new int[PatternEvaluator.INSTANCE_COUNT][this.capacity];
+        this.targets = new double[this.capacity];
+        this.batchFeatures = new double[featureCount][0];
+        this.batchPatterns = new int[PatternEvaluator.INSTANCE_COUNT][0];
+        this.values = new double[this.capacity];
+        this.featureScratch = new double[featureCount];
+        this.entryCounts = new int[PatternEvaluator.Pattern.values().length][];
+        for (PatternEvaluator.Pattern pattern : PatternEvaluator.Pattern.values()) {
+            entryCounts[pattern.ordinal()] = new int[pattern.tableSize()];
+        }
+    }
+
+    // number of positions available to batches
+    public int size() {
+        return end;
+    }
+
+    public void beginGame() {
+        if (head + MAX_GAME_STATES > capacity) {
+            head = 0;
+        }
+        gameStart = head;
+    }
+
+    // stores the position before one of the agent's moves
+    public void add(MomijiManjuBot agent, PatternEvaluator evaluator, PatternBoard board, char player) {
+        if (head - gameStart >= MAX_GAME_STATES) {
+            return;
+        }
+        agent.extractFeatures(board, player, featureScratch);
+        for (int j = 0; j < features.length; j++) {
+            features[j][head] = featureScratch[j];
+        }
+        evaluator.indices(board, player, patterns, head);
+        head++;
+    }
+
+    /*
+
+        Sets the targets of the game just played, TD(0) style: each position is pulled towards the value of the
+        agent's next position, the last one towards the result. Returns how many positions the game added.
+     */
+    public int endGame(double reward, double[] weights, PatternEvaluator evaluator) {
+        int start = gameStart;
+        int stop = head;
+        if (stop == start) {
+            return 0;
+        }
+        computeValues(features, patterns, start, stop, weights, evaluator);
+        for (int i = start; i < stop - 1; i++) {
+            targets[i] = values[i + 1];
+        }
+        targets[stop - 1] = reward;
+
+        end = Math.max(end, stop);
+        return stop - start;
+    }
+
+    /*
+
+        One mini-batch update over length slots drawn uniformly (with replacement) from the finished games: the
+        feature weights move by alpha times the mean gradient, every pattern table entry used moves by
+        patternAlpha times the mean error of the positions that used it.
+     */
+    public void train(Random random, int length, double[] weights, PatternEvaluator evaluator,
+                      double alpha, double patternAlpha) {
+        length = Math.min(length, end);
+        if (length == 0) {
+            return;
+        }
+        gather(random, length);
+        computeValues(batchFeatures, batchPatterns, 0, length, weights, evaluator);
+
+        double[] errors = values;
+        for (int i = 0; i < length; i++) {
+            errors[i] = batchTargets[i] - errors[i];
+        }
+
+        for (int j = 0; j < batchFeatures.length; j++) {
+            double[] column = batchFeatures[j];
+            double gradient = 0;
+            for (int i = 0; i < length; i++) {
+                gradient += errors[i] * column[i];
+            }
+            weights[j] += alpha * gradient / length;
+        }
+
+        for (int instance = 0; instance < batchPatterns.length; instance++) {
+            int[] counts = entryCounts[PatternEvaluator.INSTANCE_PATTERN[instance]];
+            int[] column = batchPatterns[instance];
+            for (int i = 0; i < length; i++) {
+                counts[column[i]]++;
+            }
+        }
+        for (int instance = 0; instance < batchPatterns.length; instance++) {
+            double[] table = evaluator.instanceTable(instance);
+            int[] counts = entryCounts[PatternEvaluator.INSTANCE_PATTERN[instance]];
+            int[] column = batchPatterns[instance];
+            for (int i = 0; i < length; i++) {
+                table[column[i]] += patternAlpha * errors[i] / counts[column[i]];
+            }
+        }
+        for (int instance = 0; instance < batchPatterns.length; instance++) {
+            int[] counts = entryCounts[PatternEvaluator.INSTANCE_PATTERN[instance]];
+            int[] column = batchPatterns[instance];
+            for (int i = 0; i < length; i++) {
+                counts[column[i]] = 0;
+            }
+        }
+    }
+
+    // draws the batch's slots and copies their columns into the batch arrays
+    private void gather(Random random, int length) {
+        if (batchTargets.length < length) {
+            batchTargets = new double[length];
+            for (int j = 0; j < batchFeatures.length; j++) {
+                batchFeatures[j] = new double[length];
+            }
+            for (int instance = 0; instance < batchPatterns.length; instance++) {
+                batchPatterns[instance] = new int[length];
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            int slot = random.nextInt(end);
+            batchTargets[i] = targets[slot];
+            for (int j = 0; j < features.length; j++) {
+                batchFeatures[j][i] = features[j][slot];
+            }
+            for (int instance = 0; instance < patterns.length; instance++) {
+                batchPatterns[instance][i] = patterns[instance][slot];
+            }
+        }
+    }
+
+    private void computeValues(double[][] features, int[][] patterns, int start, int stop,
+                               double[] weights, PatternEvaluator evaluator) {
+        for (int i = start; i < stop; i++) {
+            values[i] = 0;
+        }
+        for (int j = 0; j < features.length; j++) {
+            double weight = weights[j];
+            double[] column = features[j];
+            for (int i = start; i < stop; i++) {
+                values[i] += weight * column[i];
+            }
+        }
+        for (int instance = 0; instance < patterns.length; instance++) {
+            double[] table = evaluator.instanceTable(instance);
+            int[] column = patterns[instance];
+            for (int i = start; i < stop; i++) {
+                values[i] += table[column[i]];
+            }
+        }
+    }
+}
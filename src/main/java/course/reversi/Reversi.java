@@ -20,13 +20,11 @@ import java.util.Date;
 
 public class Reversi {
 
-    static List<String> moveHistory = new ArrayList<>(); // list that will be used to store turn History
-
     // game and board elements and characteristics
-    static final char EMPTY = ' ';
-    static final char BLACK = '⚫';
-    static final char WHITE = '⚪';
-    static final int SIZE = 8;
+    public static final char EMPTY = ' ';
+    public static final char BLACK = '⚫';
+    public static final char WHITE = '⚪';
+    public static final int SIZE = 8;
 
 
     // this function's purpose is setting up the initial board
@@ -102,156 +100,66 @@ public class Reversi {
     /*
 
         This function is responsible for making sure a move is valid. A move is only valid if placing a piece at a
-        given position flips at least one of the opponent's pieces.
+        given position flips at least one of the opponent's pieces. The actual check is done on a BitBoard.
     */
     public static boolean isValidMove(char[][] board, int row, int col, char player) {
+        return BitBoard.fromArray(board).isLegal(BitBoard.square(row, col), player);
+    }
 
-        // 1. checking if the cell is empty
-        if (board[row][col] != EMPTY)
-        {
-            return false; // move is allowed only if there is an empty space
-        }
-
-        // 2. identifying if there is an opponent piece
-        char opponent = (player == BLACK) ? WHITE : BLACK;
-        boolean isValid = false;
-
-        /*  3. define all 8 possible directions for movement
-
-                Here are the 8 possible directions as referred:
-                    Direction 0: Up-Left (-1, -1)
-                    Direction 1: Up (-1, 0)
-                    Direction 2: Up-Right (-1, +1)
-                    Direction 3: Right (0, +1)
-                    Direction 4: Down-Right (+1, +1)
-                    Direction 5: Down (+1, 0)
-                    Direction 6: Down-Left (+1, -1)
-                    Direction 7: Left (0, -1)
-
-         */
-        int[] directionsX = {-1, -1, -1, 0, 1, 1, 1, 0};
-        int[] directionsY = {-1, 0, 1, 1, 1, 0, -1, -1};
-
-
-        // check each direction
-        for (int dir = 0; dir < 8; dir++)
-        {
-            int x = row + directionsX[dir];
-            int y = col + directionsY[dir];
-            boolean foundOpponent = false;
+    public static int countPieces(char[][] board, char player) {
+        return BitBoard.fromArray(board).count(player);
+    }
 
-            while (x >= 0 && x < SIZE && y >= 0 && y < SIZE)
-            {
-                if (board[x][y] == opponent)
-                {
-                    foundOpponent = true; // found at least one enemy piece
-                } else if (board[x][y] == player) {
-                    if (foundOpponent)
-                    {
-                        isValid = true; // sandwich is valid
-                    }
-                    break;
-                } else {
-                    break;
-                }
 
-                x += directionsX[dir];  // increments the position for x
-                y += directionsY[dir]; //increments the position for y
-            }
-        }
 
-        return isValid; // return that the move is valid
+    // this function returns every valid move for a player as a bitmask (bit row * 8 + col is set when legal)
+    public static long getValidMoveMask(char[][] board, char player) {
+        return BitBoard.fromArray(board).legalMoves(player);
     }
 
-    public static int countPieces(char[][] board, char player) {
-        int count = 0;
-        for (int i = 0; i < board.length; i++) {
-            for (int j = 0; j < board[i].length; j++) {
-                if (board[i][j] == player) {
-                    count++;
-                }
-            }
-        }
-        return count;
+    // this function writes the valid squares (row * 8 + col) into the given array and returns how many there are
+    public static int getValidMoves(char[][] board, char player, int[] moves) {
+        return BitBoard.fillMoves(getValidMoveMask(board, player), moves);
     }
 
-
-
-    // this function displays what moves are valid for a player
+    // this function lists the valid moves in LetterNumber format. Only the UI and the log files need this form.
     public static List<String> getValidMoves(char[][] board, char player) {
 
         List<String> validMoves = new ArrayList<>();
+        long moves = getValidMoveMask(board, player);
 
+        // the mask is walked from A1 to H8, which is the same row by row order as before
+        while (moves != 0) {
+            int square = Long.numberOfTrailingZeros(moves);
+            moves &= moves - 1;
 
-        // traverse through the rows to find a valid move
-        for (int row = 0; row < SIZE; row++) {
-            // and traverse through the columns to find a valid move
-            for (int col = 0; col < SIZE; col++) {
+            // convert row and col to LetterNumber format (e.g., D3)
+            validMoves.add(BitBoard.squareName(square));
+        }
 
-                // if there is a validMove, return it
-                if (isValidMove(board, row, col, player))
-                {
-                    // convert row and col to LetterNumber format (e.g., D3)
-                    char letter = (char) ('A' + row);
-                    int number = col + 1;
-                    validMoves.add(letter + "" + number);
-                }
-            }
+        if (Trace.MOVEGEN.isEnabled(Trace.DEBUG)) {
+            Trace.MOVEGEN.log(Trace.DEBUG, "Valid moves for player " + player + ": " + validMoves);
         }
 
-        System.out.println("Valid moves for player " + player + ": " + validMoves);
         return validMoves; // return valid Moves
     }
 
-    // this function is responsible for applying the validMoves to the Board
+    // this function is responsible for applying the validMoves to the Board. Nothing is recorded here,
+    // the moves of an actual game are kept by its GameSession.
     public static void makeMove(char[][] board, int row, int col, char player)
     {
-        // Add the move to the history. Convert to letter-number format first.
-        char moveLetter = (char) ('A' + row);
-        int moveNumber = col + 1;
-        moveHistory.add(player + ": " + moveLetter + moveNumber);
-
-        // 1. identify the opponent's piece
-        char opponent = (player == BLACK) ? WHITE : BLACK;
-
-        // 2. define all 8 possible directions for flipping. Same directions as shown in validMoves
-        int[] dx = {-1, -1, -1, 0, 1, 1, 1, 0};
-        int[] dy = {-1, 0, 1, 1, 1, 0, -1, -1};
-
-        // 3. put the player's piece on the board
-        board[row][col] = player;
-
-        // 4. check each direction for a valid sandwich
-        for (int dir = 0; dir < 8; dir++)
-        {
-            int x = row + dx[dir];
-            int y = col + dy[dir];
-            boolean hasOpponent = false;
-
-            // moving in the current direction
-            while (x >= 0 && x < SIZE && y >= 0 && y < SIZE && board[x][y] == opponent) { // make sure that pieces are only with the board boundaries
-
-                hasOpponent = true; // found at least one opponent piece
-                x += dx[dir];
-                y += dy[dir];
-            }
-
-            // flip the enemy's piece if enemy found
-            if (hasOpponent && x >= 0 && x < SIZE && y >= 0 && y < SIZE && board[x][y] == player) {
-                //backtrack to lip pieces
-                x -= dx[dir];
-                y -= dy[dir];
-                while (x != row || y != col) {
-                    board[x][y] = player; // flip the pieces
-                    x -= dx[dir];
-                    y -= dy[dir];
-                }
-            }
+        // apply the move on a BitBoard and copy back only the squares that changed
+        BitBoard bitBoard = BitBoard.fromArray(board);
+        long changed = bitBoard.makeMove(BitBoard.square(row, col), player) | BitBoard.bit(BitBoard.square(row, col));
+        while (changed != 0) {
+            int square = Long.numberOfTrailingZeros(changed);
+            changed &= changed - 1;
+            board[square / SIZE][square % SIZE] = player;
         }
     }
 
     // saves the turns to a txtfile
-    public static void saveMovesToFile(String gameMode) {
+    public static void saveMovesToFile(String gameMode, List<String> moveHistory) {
         try {
             // Get the current date and time
             SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss");
@@ -20,6 +20,7 @@ package course.reversi;
 
 import javafx.animation.PauseTransition;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
@@ -34,7 +35,9 @@ import javafx.scene.shape.Rectangle;
 import javafx.stage.Stage;
 import javafx.util.Duration;
 
-import java.util.List;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
 
 public class ReversiGameFX extends Application {
     public static void main(String[] args) {
@@ -45,12 +48,30 @@ public class ReversiGameFX extends Application {
     private static final double CELL_SIZE = 60.0;
     private static final char BLACK = '⚫';
     private static final char WHITE = '⚪';
+    private static final long BOT_THINK_MILLIS = 2000; // the bot searches while the move delay runs
 
-    private char[][] board = new char[SIZE][SIZE];
-    private char currentPlayer = BLACK;
+    // the four looks of a cell, shared by all cells
+    private static final Color EMPTY_FILL = Color.SPRINGGREEN;
+    private static final RadialGradient BLACK_FILL = createPieceFill(Color.SPRINGGREEN, Color.BLACK);
+    private static final RadialGradient WHITE_FILL = createPieceFill(Color.SPRINGGREEN, Color.WHITE);
+    private static final RadialGradient HINT_FILL = createPieceFill(Color.SPRINGGREEN, Color.PALEVIOLETRED);
+
+    private final GameSession session = new GameSession(); // board, player turn and move record of the game
     private SimpleBot bot = null;
+    private final OpeningBook openingBook = OpeningBook.loadDefault(); // null when there is no opening.book file
+
+    // the bot's move while it is being searched, cancelled when the game it was meant for goes away
+    private CompletableFuture<int[]> pendingBotMove = null;
+    private PauseTransition botMoveDelay = null;
+    private Alert thinkingDialog = null;
+    private CompletableFuture<Void> pondering = null; // the bot thinking on the human's time
+
+    private GameArchive.Writer archive = null; // opened with the first finished game
+    private boolean archiveFailed = false;     // then games go to the txt logs instead
 
     private GridPane boardGrid;
+    private Rectangle[] cells;                  // row * SIZE + col, the same numbering as BitBoard squares
+    private long shownBlack, shownWhite, shownHints; // what the cells show right now, as BitBoard masks
     private Label scoreLabel;
     private Label currentPlayerLabel; // New label to display the current player
 
@@ -111,6 +132,7 @@ public class ReversiGameFX extends Application {
     }
 
     private void goToMainMenu() {
+        cancelBotMove();
         start(primaryStage);  // Calls the start method to go back to the main menu
     }
 
@@ -140,8 +162,24 @@ public class ReversiGameFX extends Application {
          */
 
         // initialize game board and sets the current player
-        Reversi.initializeBoard(board);
-        currentPlayer = BLACK;
+        cancelBotMove();
+        session.reset();
+
+        // set the bot mode based on the selected game mode, before the board is drawn (drawing it starts the bot's pondering)
+        if (gameMode == GameMode.HUMAN_VS_DUMB_BOT) {
+            bot = new DumbBot();
+        } else if (gameMode == GameMode.HUMAN_VS_MAPLE_BOT) {
+            bot = new MapleBot();
+        } else if (gameMode == GameMode.HUMAN_VS_CASTELLA_BOT){
+            bot = new CastellaBot();
+        } else if (gameMode == GameMode.HUMAN_VS_MOMIJI_MANJU_BOT){
+            bot = new MomijiManjuBot();
+        } else {
+            bot = null;  // bot is set to null in the case for human vs human mode.
+        }
+        if (bot != null) {
+            bot.setOpeningBook(openingBook);
+        }
 
         // scene layout setup
         root = new VBox(10);
@@ -152,6 +190,7 @@ public class ReversiGameFX extends Application {
         // board setup
         boardGrid = new GridPane();
         boardGrid.setAlignment(Pos.CENTER);
+        createCells();
         updateBoard();
 
         scoreLabel = new Label("Black: 0 | White: 0");
@@ -181,19 +220,6 @@ public class ReversiGameFX extends Application {
         Scene gameScene = new Scene(root, 600, 700);
         primaryStage.setScene(gameScene);
         primaryStage.show();
-
-        // set the bot mode based on the selected game mode
-        if (gameMode == GameMode.HUMAN_VS_DUMB_BOT) {
-            bot = new DumbBot();
-        } else if (gameMode == GameMode.HUMAN_VS_MAPLE_BOT) {
-            bot = new MapleBot();
-        } else if (gameMode == GameMode.HUMAN_VS_CASTELLA_BOT){
-            bot = new CastellaBot();
-        } else if (gameMode == GameMode.HUMAN_VS_MOMIJI_MANJU_BOT){
-            bot = new MomijiManjuBot();
-        } else {
-            bot = null;  // bot is set to null in the case for human vs human mode.
-        }
     }
 
     private void showHelp() {
@@ -220,71 +246,92 @@ public class ReversiGameFX extends Application {
         alert.showAndWait();
     }
 
-    private void updateBoard() {
+    private void createCells() {
         /*
 
-            This method updates the visualization of the Board:
-            -   showing pieces
-            -   valid moves
-            -   click event handlers (when a piece is being put down)
-
+            This method puts the 64 cells of a new board into boardGrid. The cells stay for the whole game,
+            updateBoard only changes their fill. Each cell sends its clicks to handleCellClick.
          */
-
-
-        boardGrid.getChildren().clear();        // clear a previous visualization of the board
-
-        boardGrid.getChildren().clear();  // Clear the previous board visualization
-
-        boolean isBotTurn = (bot != null && currentPlayer == WHITE); // Assuming bot is White
-        boardGrid.setDisable(isBotTurn); // Disable input during bot's turn
-
+        cells = new Rectangle[SIZE * SIZE];
         for (int row = 0; row < SIZE; row++) {
             for (int col = 0; col < SIZE; col++) {
                 Rectangle cell = new Rectangle(CELL_SIZE, CELL_SIZE);
-                cell.setFill(Color.SPRINGGREEN);
+                cell.setFill(EMPTY_FILL);
                 cell.setStroke(Color.BLACK);
 
-                if (board[row][col] == BLACK || board[row][col] == WHITE) {
-                    cell.setFill(createPieceFill(Color.SPRINGGREEN, board[row][col] == BLACK ? Color.BLACK : Color.WHITE));
-                }
+                final int r = row, c = col;
+                cell.setOnMouseClicked(e -> handleCellClick(r, c));
 
-                // Highlight valid moves
-                String move = String.format("%c%d", 'A' + row, col + 1);
-                if (!isBotTurn && Reversi.getValidMoves(board, currentPlayer).contains(move)) {
-                    cell.setFill(createPieceFill(Color.SPRINGGREEN, Color.PALEVIOLETRED));
-                }
+                cells[row * SIZE + col] = cell;
+                boardGrid.add(cell, col, row);
+            }
+        }
+        shownBlack = shownWhite = shownHints = -1L;  // nothing shown matches, the first update draws every cell
+    }
 
-                final int r = row, c = col;
-                cell.setOnMouseClicked(e -> {
-                    if (!isBotTurn) {
-                        if (Reversi.isValidMove(board, r, c, currentPlayer)) {
-                            Reversi.makeMove(board, r, c, currentPlayer);
-                            switchPlayer();
+    private void updateBoard() {
+        /*
 
-                            if (Reversi.getValidMoves(board, BLACK).isEmpty() && Reversi.getValidMoves(board, WHITE).isEmpty()) {
-                                showGameOver();
-                            }
+            This method updates the visualization of the Board:
+            -   showing pieces
+            -   valid moves
 
-                        }
-                    }
+            Only the cells that changed since the last update get a new fill: the placed piece, the flipped pieces
+            and the valid moves that came or went. The valid moves are computed once, from the move mask.
+         */
 
-                });
+        BitBoard board = session.getBoard();
+        char currentPlayer = session.getCurrentPlayer();
+        boolean isBotTurn = (bot != null && currentPlayer == WHITE); // Assuming bot is White
+        boardGrid.setDisable(isBotTurn); // Disable input during bot's turn
 
-                boardGrid.add(cell, col, row);
-            }
+        long black = board.getBlack();
+        long white = board.getWhite();
+        long hints = isBotTurn ? 0 : board.legalMoves(currentPlayer);   // Highlight valid moves
+
+        long changed = (black ^ shownBlack) | (white ^ shownWhite) | (hints ^ shownHints);
+        while (changed != 0) {
+            int square = Long.numberOfTrailingZeros(changed);
+            changed &= changed - 1;
+
+            long bit = BitBoard.bit(square);
+            cells[square].setFill((black & bit) != 0 ? BLACK_FILL
+                    : (white & bit) != 0 ? WHITE_FILL
+                    : (hints & bit) != 0 ? HINT_FILL
+                    : EMPTY_FILL);
         }
+        shownBlack = black;
+        shownWhite = white;
+        shownHints = hints;
 
         if (isBotTurn) {
             handleBotMove(); // Bot moves when it's its turn
+        } else if (bot != null && pondering == null && !session.isGameOver()) {
+            pondering = bot.ponderAsync(board, currentPlayer); // the bot searches ahead while the human thinks
         }
+    }
 
+    private void handleCellClick(int row, int col) {
+        /*
 
+            This method plays the human's move when a cell is clicked (when a piece is being put down).
+         */
+        boolean isBotTurn = (bot != null && session.getCurrentPlayer() == WHITE);
+        if (!isBotTurn) {
+            if (session.isValidMove(row, col)) {
+                stopPondering();
+                session.play(row, col);
+                switchPlayer();
 
+                if (session.isGameOver()) {
+                    showGameOver();
+                }
 
-
+            }
+        }
     }
 
-    private RadialGradient createPieceFill(Color baseColor, Color pieceColor) {
+    private static RadialGradient createPieceFill(Color baseColor, Color pieceColor) {
         /*
 
             This method is responsible for creating the illusion of putting a piece down. Instead of actually stacking
@@ -310,10 +357,10 @@ public class ReversiGameFX extends Application {
     private void switchPlayer() {
         /*
 
-            This method switches to the other player and updates the game visualization (changes the currentPlayer label)
+            This method is called once the session has handed the turn to the other player and updates the game
+            visualization (changes the currentPlayer label)
          */
-        currentPlayer = (currentPlayer == BLACK) ? WHITE : BLACK;
-        currentPlayerLabel.setText("Current Player: " + (currentPlayer == BLACK ? "Black" : "White"));
+        currentPlayerLabel.setText("Current Player: " + (session.getCurrentPlayer() == BLACK ? "Black" : "White"));
         updateBoard();
     }
 
@@ -323,13 +370,8 @@ public class ReversiGameFX extends Application {
             This method calculates and updates the current scores for both players by counting the amount of cells
             is occupied by each color
          */
-        int blackScore = 0, whiteScore = 0;
-        for (char[] row : board) {
-            for (char cell : row) {
-                if (cell == BLACK) blackScore++;
-                else if (cell == WHITE) whiteScore++;
-            }
-        }
+        int blackScore = session.getBoard().count(BLACK);
+        int whiteScore = session.getBoard().count(WHITE);
 
         // update the score after counting
         scoreLabel.setText(String.format("Black: %d | White: %d", blackScore, whiteScore));
@@ -340,24 +382,22 @@ public class ReversiGameFX extends Application {
 
             This method resets the game state, including the board, scores, and player turn.
          */
-        System.out.println("Resetting game...");
-        Reversi.initializeBoard(board);
-        currentPlayer = BLACK;
+        if (Trace.UI.isEnabled(Trace.INFO)) {
+            Trace.UI.log(Trace.INFO, "Resetting game...");
+        }
+        cancelBotMove();
+        session.reset();
         updateBoard();
         updateScores();
         currentPlayerLabel.setText("Current Player: Black");
-        System.out.println("Game reset successfully.");
+        if (Trace.UI.isEnabled(Trace.INFO)) {
+            Trace.UI.log(Trace.INFO, "Game reset successfully.");
+        }
     }
 
     private void showGameOver() {
-        int blackCount = 0, whiteCount = 0;
-
-        for (int row = 0; row < SIZE; row++) {
-            for (int col = 0; col < SIZE; col++) {
-                if (board[row][col] == BLACK) blackCount++;
-                if (board[row][col] == WHITE) whiteCount++;
-            }
-        }
+        int blackCount = session.getBoard().count(BLACK);
+        int whiteCount = session.getBoard().count(WHITE);
 
 
         String winner;
@@ -376,7 +416,7 @@ public class ReversiGameFX extends Application {
                                 (bot instanceof  CastellaBot) ? "Human vs CastellaBot":
                                         "Human vs MomijiManjuBot";
 
-        Reversi.saveMovesToFile(modeText);
+        saveGame(modeText);
 
         Alert alert = new Alert(Alert.AlertType.INFORMATION);
         alert.setTitle("Game Over");
@@ -397,16 +437,55 @@ public class ReversiGameFX extends Application {
     }
 
 
+    private void saveGame(String modeText) {
+        /*
+
+            This method adds the finished game to the game archive. The writing happens on the archive's own
+            thread. If the archive cannot be opened, the game is saved as a txt log like before.
+         */
+        if (archive == null && !archiveFailed) {
+            try {
+                archive = GameArchive.Writer.open(Paths.get(GameArchive.DEFAULT_FILE));
+            } catch (IOException e) {
+                Trace.UI.log(Trace.ERROR, "Could not open the game archive: " + e.getMessage());
+                archiveFailed = true;
+            }
+        }
+        if (archive != null) {
+            session.saveTo(archive, modeText);
+        } else {
+            session.saveMovesToFile(modeText);
+        }
+    }
+
+    @Override
+    public void stop() throws IOException {
+        // writes the games still queued before the program exits
+        cancelBotMove();
+        if (archive != null) {
+            archive.close();
+        }
+    }
+
     private void handleBotMove() {
 
         /*
-            This method executes the bot's move with a delay, updating the board and switching back to the player.
+            This method starts the bot's move and returns right away, so the board stays responsive while the bot
+            thinks. The search runs on the bot's own thread and the move is played on the FX thread once both the
+            search and the delay are done.
          */
 
-        if (bot == null) return;
+        if (bot == null || pendingBotMove != null) return;  // no bot, or its move is already on the way
+
+        long validMoves = session.getBoard().legalMoves(WHITE); // note that since the player always goes first, the bot is always white
+        if (validMoves == 0) {
+            session.pass();
+            switchPlayer();
+            return;
+        }
 
         // Show "thinking" dialog
-        Alert thinkingDialog = new Alert(Alert.AlertType.INFORMATION);
+        thinkingDialog = new Alert(Alert.AlertType.INFORMATION);
         thinkingDialog.setTitle("Bot Thinking...");
         thinkingDialog.setHeaderText(null);
         thinkingDialog.setContentText("The bot is thinking...");
@@ -418,27 +497,73 @@ public class ReversiGameFX extends Application {
         thinkingDialog.getDialogPane().setContent(dialogContent);
 
         thinkingDialog.show();
-        List<String> validMoves = Reversi.getValidMoves(board, WHITE); // note that since the player always goes first, the bot is always white
-        if (validMoves.isEmpty()) {
-            switchPlayer();
-            return;
-        }
+
+        CompletableFuture<int[]> search = bot.chooseMoveAsync(session.getBoard(), WHITE,
+                System.nanoTime() + BOT_THINK_MILLIS * 1_000_000L);
+        pendingBotMove = search;
 
         // add a delay before the bot makes its move. I added this because when I had people test the game,
         // a regular comment was that the bot was putting pieces too fast, which often lead to confusing
         // the human player.
-        PauseTransition pause = new PauseTransition(Duration.seconds(2));       //bot does not place a piece until after 2 seconds
-        pause.setOnFinished(event -> {
+        botMoveDelay = new PauseTransition(Duration.millis(BOT_THINK_MILLIS));     //bot does not place a piece until after 2 seconds
+        botMoveDelay.setOnFinished(event ->
+                search.whenComplete((botMove, error) -> Platform.runLater(() -> playBotMove(search, botMove, error))));
+        botMoveDelay.play();
+    }
+
+    private void playBotMove(CompletableFuture<int[]> search, int[] botMove, Throwable error) {
+        /*
+            This method plays the move a search came up with, unless the game it was searched for is gone.
+         */
+        if (search != pendingBotMove) return;   // cancelled by a reset, a new game or the main menu
+        pendingBotMove = null;
+        botMoveDelay = null;
+        closeThinkingDialog();
+
+        long validMoves = session.getBoard().legalMoves(WHITE);
+        if ((error != null || botMove == null) && validMoves != 0) {
+            // the game would wait for the bot forever, so it plays its first legal move instead
+            Trace.UI.log(Trace.ERROR, "Bot move failed, playing the first legal move instead: " + error);
+            int square = Long.numberOfTrailingZeros(validMoves);
+            botMove = new int[] { square / 8, square % 8 };
+        }
+        if (botMove != null) {
+            session.play(botMove[0], botMove[1]);
+            updateScores();
+            switchPlayer();
+            updateBoard();
+        }
+    }
+
+    private void cancelBotMove() {
+        /*
+            This method drops the bot's move if one is being searched, and stops the bot pondering. The search is
+            stopped instead of waited for.
+         */
+        if (botMoveDelay != null) {
+            botMoveDelay.stop();
+            botMoveDelay = null;
+        }
+        if (pendingBotMove != null) {
+            pendingBotMove.cancel(true);
+            pendingBotMove = null;
+        }
+        closeThinkingDialog();
+        stopPondering();
+    }
+
+    private void stopPondering() {
+        if (pondering != null) {
+            pondering.cancel(true);
+            pondering = null;
+        }
+    }
+
+    private void closeThinkingDialog() {
+        if (thinkingDialog != null) {
             thinkingDialog.close();
-            int[] botMove = bot.getBotMove(board, WHITE);
-            if (botMove != null) {
-                Reversi.makeMove(board, botMove[0], botMove[1], WHITE);
-                updateScores();
-                switchPlayer();
-                updateBoard();
-            }
-        });
-        pause.play();
+            thinkingDialog = null;
+        }
     }
 
 
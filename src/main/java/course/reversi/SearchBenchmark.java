@@ -0,0 +1,92 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    SearchBenchmark measures how CastellaBot's search scales with threads. For 1, 2, 4, ... threads (up to the
+    number of cores) it searches the same set of midgame positions to a fixed depth and prints the time to
+    reach that depth and the nodes per second. Every position is searched from an empty transposition table.
+
+    Usage: java course.reversi.SearchBenchmark [depth] [maxThreads] [positions]
+
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class SearchBenchmark {
+
+    private static final long POSITION_SEED = 20251215L;
+    private static final int OPENING_PLIES = 20;
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 9;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int positionCount = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        List<BitBoard> positions = randomPositions(positionCount, OPENING_PLIES, POSITION_SEED);
+        BitBoard warmUp = randomPositions(1, OPENING_PLIES, POSITION_SEED + 1).get(0);
+
+        System.out.printf("CastellaBot search, depth %d, %d positions%n", depth, positions.size());
+        System.out.printf("%8s %12s %14s %12s %10s%n", "threads", "time (ms)", "nodes", "nodes/s", "speedup");
+
+        double baseMillis = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            CastellaBot bot = new CastellaBot(64);
+            bot.setThreads(threads);
+            bot.setMaxDepth(depth);
+            bot.setTimeBudget(Long.MAX_VALUE / 2_000_000L);
+
+            // one unmeasured search so the JIT has compiled the search before timing starts. It is on a position
+            // of its own, the table it fills would make the first measured position mostly table hits.
+            bot.getBotMove(warmUp, Reversi.BLACK);
+
+            long nodes = 0;
+            long nanos = 0;
+            for (BitBoard position : positions) {
+                bot.newGame(); // every position starts from an empty table
+                long start = System.nanoTime();
+                bot.getBotMove(position, Reversi.BLACK);
+                nanos += System.nanoTime() - start;
+                nodes += bot.getLastNodeCount();
+            }
+            double millis = nanos / 1e6;
+            if (threads == 1) {
+                baseMillis = millis;
+            }
+
+            System.out.printf("%8d %12.1f %14d %12.0f %10.2f%n",
+                    threads, millis, nodes, nodes / (millis / 1000.0), baseMillis / millis);
+        }
+    }
+
+    // positions reached by random play from the start, always with Black to move
+    static List<BitBoard> randomPositions(int count, int plies, long seed) {
+        Random random = new Random(seed);
+        int[] moves = new int[32];
+        List<BitBoard> positions = new ArrayList<>();
+
+        while (positions.size() < count) {
+            BitBoard board = new BitBoard();
+            char player = Reversi.BLACK;
+            for (int ply = 0; ply < plies; ply++) {
+                int n = board.generateMoves(player, moves);
+                if (n == 0) {
+                    player = Reversi.getOpponent(player);
+                    n = board.generateMoves(player, moves);
+                    if (n == 0) {
+                        break;
+                    }
+                }
+                board.makeMove(moves[random.nextInt(n)], player);
+                player = Reversi.getOpponent(player);
+            }
+            if (player == Reversi.BLACK && board.legalMoves(player) != 0) {
+                positions.add(board);
+            }
+        }
+        return positions;
+    }
+}
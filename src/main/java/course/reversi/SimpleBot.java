@@ -10,15 +10,168 @@ package course.reversi;
 
     SimpleBot is an abstract class that serves as a blueprint for the other two classes.
     SimpleBot has a function getBotMove that varies from bot to bot according to the
-    bot's strategy.
+    bot's strategy. Bots search on a BitBoard; the char[][] version is kept for the UI.
+    chooseMove looks the position up in the opening book first (if the bot has one) and only
+    asks getBotMove when the book has nothing.
+
+    chooseMoveAsync runs chooseMove on a search thread of the bot's own and hands back a CompletableFuture, so
+    a UI thread never waits for a search. Cancelling the future stops the search (see stop). ponderAsync lets
+    the bot think on the opponent's time in the same way.
 
 
  */
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
 public abstract class SimpleBot extends Reversi{
+    private OpeningBook openingBook = null;
+
+    // async searches run one at a time on this thread, which goes away after a while without work
+    private ThreadPoolExecutor searchExecutor = null;
+    private volatile CompletableFuture<?> runningSearch = null;
+    private volatile boolean stopRequested = false;
+
+    public void setOpeningBook(OpeningBook openingBook) {
+        this.openingBook = openingBook;
+    }
+
+    public OpeningBook getOpeningBook() {
+        return openingBook;
+    }
+
+    // called before each game. Bots that keep state between moves (e.g. a transposition table) reset it here.
+    public void newGame() {
+    }
+
+    // seeds the bot's random choices, if it makes any, so a game can be played again exactly
+    public void setSeed(long seed) {
+    }
+
+    // book move if there is one, otherwise the bot's own move
+    public int[] chooseMove(BitBoard board, char player) {
+        int[] move = bookMove(board, player);
+        return move != null ? move : getBotMove(board, player);
+    }
+
+    // same as chooseMove, with a deadline (a System.nanoTime value) for bots that search against the clock
+    public int[] chooseMove(BitBoard board, char player, long deadlineNanos) {
+        int[] move = bookMove(board, player);
+        return move != null ? move : getBotMove(board, player, deadlineNanos);
+    }
+
+    private int[] bookMove(BitBoard board, char player) {
+        if (openingBook == null) {
+            return null;
+        }
+        int square = openingBook.lookup(board, player);
+        if (square < 0) {
+            return null;
+        }
+        Trace.SEARCH.logf(Trace.INFO, "book move %s for %s", BitBoard.squareName(square), player);
+        return toMove(square);
+    }
+
+    /*
+
+        chooseMove on the bot's search thread. The board is copied first, so the caller may go on changing its
+        own. Calls are queued and run one after the other, a bot never searches two positions at once.
+
+        Cancelling the returned future calls stop: the running search ends as soon as the bot notices and its
+        move is thrown away, a queued one never starts. The deadline is only a hint to the bot, the future is
+        not completed when it passes.
+     */
+    public CompletableFuture<int[]> chooseMoveAsync(BitBoard board, char player, long deadlineNanos) {
+        BitBoard position = board.copy();
+        return runOnSearchThread(() -> chooseMove(position, player, deadlineNanos));
+    }
+
+    // ponder on the bot's search thread, until the returned future is cancelled
+    public CompletableFuture<Void> ponderAsync(BitBoard board, char opponent) {
+        BitBoard position = board.copy();
+        return runOnSearchThread(() -> {
+            ponder(position, opponent);
+            return null;
+        });
+    }
+
+    /*
+
+        Called while the opponent is to move in this position. Bots that keep what they searched from one move
+        to the next (e.g. in a transposition table) can search ahead here to get a head start on the next
+        getBotMove. It has to return soon after isStopRequested turns true. Bots that keep nothing don't ponder.
+     */
+    public void ponder(BitBoard board, char opponent) {
+    }
+
+    private <T> CompletableFuture<T> runOnSearchThread(Supplier<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.whenComplete((result, error) -> {
+            if (error instanceof CancellationException && runningSearch == future) {
+                stop();
+            }
+        });
+
+        searchExecutor().execute(() -> {
+            // set before the check, so a cancel that comes after the check still reaches this search
+            runningSearch = future;
+            stopRequested = false;
+            try {
+                if (!future.isDone()) {
+                    future.complete(task.get());
+                }
+            } catch (RuntimeException | Error e) {
+                future.completeExceptionally(e);
+            } finally {
+                runningSearch = null;
+            }
+        });
+        return future;
+    }
+
+    private synchronized ThreadPoolExecutor searchExecutor() {
+        if (searchExecutor == null) {
+            searchExecutor = new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, getClass().getSimpleName() + "-search");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return searchExecutor;
+    }
+
+    // asks the running search to give up. Bots that search for long check isStopRequested and return early.
+    public void stop() {
+        stopRequested = true;
+    }
+
+    protected boolean isStopRequested() {
+        return stopRequested;
+    }
+
     // abstract method that each bot must implement
-    public abstract int[] getBotMove(char[][] board, char player);
+    public abstract int[] getBotMove(BitBoard board, char player);
+
+    // bots that can use a deadline (a System.nanoTime value) override this, the others simply ignore it
+    public int[] getBotMove(BitBoard board, char player, long deadlineNanos) {
+        return getBotMove(board, player);
+    }
+
+    // char[][] entry point, converts the board once and hands it to the bot
+    public int[] getBotMove(char[][] board, char player) {
+        return getBotMove(BitBoard.fromArray(board), player);
+    }
+
+    // converts a square index (row * 8 + col) into the row/col pair returned by getBotMove
+    protected static int[] toMove(int square) {
+        return new int[] { square / 8, square % 8 };
+    }
 
-    // method to convert a move to row/col indices (shared by all bots)
+    // method to convert a LetterNumber move (e.g., D3) to row/col indices. Only used for UI and log input.
     protected int[] convertMove(String move) {
         int row = move.charAt(0) - 'A';
         int col = move.charAt(1) - '1';
@@ -7,70 +7,160 @@ package course.reversi;
  reinforcement learning algorithm with linear function approximation.
  The trainer plays repeated games of Reversi against increasingly
  strong opponents (curriculum learning), updates feature weights
- using the TD error, and returns the learned weight vector.
+ using the TD error, and returns the learned weight vector. The pattern
+ tables of the agent's PatternEvaluator are learned in the same pass: each
+ table entry a position used moves with the TD error.
+
+ Positions go into a ReplayBuffer as they are played. When a game ends its
+ TD targets are set, and for every BATCH_SIZE new positions one mini-batch
+ (BATCH_SIZE buffer slots drawn at random) is learned from.
+
+ Games can be played on several threads at once (setThreads). Every worker
+ has its own board, random generator, agent and opponent, and the weights
+ are shared in one of two ways (setUpdateMode):
+
+ -   HOGWILD:   all workers update the same weight array and pattern tables
+                without locking. Updates are sparse and small, so the
+                occasional lost write does not hurt the learning.
+ -   AVERAGED:  every worker learns on its own copy. After each round of
+                syncInterval games per worker the copies are averaged into
+                the shared weights and handed back out.
+
+ Usage: java course.reversi.TDBotTrainer [out file] [threads] [HOGWILD|AVERAGED]
+ The trained weights are written as a WeightFile (by default the one
+ MomijiManjuBot loads on startup).
 
 */
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 public class TDBotTrainer {
 
+    public enum UpdateMode {
+        HOGWILD,
+        AVERAGED
+    }
+
     // --- Learning Hyperparameters ---
-    private static final double ALPHA = 0.01;      // Learning Rate
+    private static final double ALPHA = 1.0;           // Learning Rate, a step on the mean gradient of a mini-batch
+    private static final double PATTERN_ALPHA = 0.02;  // Learning rate of the pattern tables, a step on the mean error per table entry
     private static final int NUM_FEATURES = 10;
 
     private static final int EPOCHS_PER_STAGE = 10000;
     private static final int TOTAL_EPOCHS = EPOCHS_PER_STAGE * 3;
 
+    private static final int BATCH_SIZE = 256;
+    private static final int REPLAY_CAPACITY = 1 << 15; // positions per worker, about 500 games
+
+    private static final int DEFAULT_SYNC_INTERVAL = 50; // games per worker between two progress/averaging points
+
     private double[] weights = new double[NUM_FEATURES];
-    private MomijiManjuBot botAgent;
+    private final PatternEvaluator patterns = new PatternEvaluator();
+    private final Random random;
 
-    // We use SimpleBot as the type so we can assign DumbBot, MapleBot, or CastellaBot
-    private SimpleBot opponentAgent;
-    private Random random = new Random();
+    private int threads = 1;
+    private UpdateMode updateMode = UpdateMode.HOGWILD;
+    private int syncInterval = DEFAULT_SYNC_INTERVAL;
+    private Worker singleGameWorker = null; // used by playTrainingGame
 
     private static final int SIZE = 8;
     private static final char BLACK = '⚫';
     private static final char WHITE = '⚪';
 
     public TDBotTrainer() {
+        this(new Random().nextLong());
+    }
 
+    // the seed decides the initial weights and the workers' seeds, so on one thread the same seed trains the same way
+    public TDBotTrainer(long seed) {
+        this.random = new Random(seed);
         for (int i = 0; i < NUM_FEATURES; i++) {
             this.weights[i] = (random.nextDouble() * 0.2) - 0.1;
         }
+    }
+
+    // number of games played at the same time. 1 (the default) plays on the calling thread only.
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    // seeds the workers created from now on: their exploration and their opponents' random choices
+    public void setSeed(long seed) {
+        random.setSeed(seed);
+    }
+
+    public void setUpdateMode(UpdateMode updateMode) {
+        this.updateMode = updateMode;
+    }
+
+    public void setSyncInterval(int games) {
+        this.syncInterval = Math.max(1, games);
+    }
+
+    public PatternEvaluator getPatterns() {
+        return patterns;
+    }
+
+    // plays one training game against the opponent on the calling thread and learns from it straight into
+    // the shared weights, e.g. for benchmarks or small experiments
+    public void playTrainingGame(SimpleBot opponent) {
+        if (singleGameWorker == null) {
+            singleGameWorker = new Worker(opponent, random.nextLong(), true);
+        }
+        singleGameWorker.opponentAgent = opponent;
+        singleGameWorker.playSingleGameAndLearn();
+    }
 
-        this.botAgent = new MomijiManjuBot();
-        this.botAgent.setWeights(this.weights);
+    // writes the current weights and pattern tables for MomijiManjuBot to load
+    public void save(Path file) throws IOException {
+        WeightFile.write(file, weights, patterns);
+    }
 
-        this.opponentAgent = new DumbBot(); // Default initialization
+    public static void main(String[] args) throws IOException {
+        Path file = Paths.get(args.length > 0 ? args[0] : WeightFile.DEFAULT_FILE);
+        TDBotTrainer trainer = new TDBotTrainer();
+        if (args.length > 1) {
+            trainer.setThreads(Integer.parseInt(args[1]));
+        }
+        if (args.length > 2) {
+            trainer.setUpdateMode(UpdateMode.valueOf(args[2]));
+        }
+        trainer.train();
+        trainer.save(file);
+        System.out.println("Weights written to " + file);
     }
 
 
     public double[] train() {
-        System.out.println("Starting TD Learning Training with Curriculum Learning...");
+        System.out.println("Starting TD Learning Training with Curriculum Learning (" + threads + " threads, "
+                + updateMode + ")...");
 
-        opponentAgent = new DumbBot();
         System.out.println("\n--- Stage 1: Training against DumbBot for " + EPOCHS_PER_STAGE + " epochs ---");
-        runTrainingStage("DumbBot", 0);
+        runTrainingStage("DumbBot", DumbBot::new, 0);
 
-        opponentAgent = new MapleBot();
         System.out.println("\n--- Stage 2: Training against MapleBot for " + EPOCHS_PER_STAGE + " epochs ---");
-        runTrainingStage("MapleBot", EPOCHS_PER_STAGE);
+        runTrainingStage("MapleBot", MapleBot::new, EPOCHS_PER_STAGE);
 /*
-        opponentAgent = new CastellaBot();
         System.out.println("\n--- Stage 3: Training against CastellaBot for " + EPOCHS_PER_STAGE + " epochs ---");
-        runTrainingStage("CastellaBot", EPOCHS_PER_STAGE * 2);
+        runTrainingStage("CastellaBot", CastellaBot::new, EPOCHS_PER_STAGE * 2);
 
-        opponentAgent = new MomijiManjuBot();
         System.out.println("\n--- Stage 3: Training against MomijiManjuBot for " + EPOCHS_PER_STAGE + " epochs ---");
-        runTrainingStage("MomijiManjuBot", EPOCHS_PER_STAGE * 2);
+        runTrainingStage("MomijiManjuBot", MomijiManjuBot::new, EPOCHS_PER_STAGE * 2);
 
-        opponentAgent = new DumbBot();
         System.out.println("\n--- Stage 4: Training against DumbBot for " + EPOCHS_PER_STAGE + " epochs ---");
-        runTrainingStage("DumbBot", EPOCHS_PER_STAGE * 3);*/
+        runTrainingStage("DumbBot", DumbBot::new, EPOCHS_PER_STAGE * 3);*/
 
         System.out.println("\nTraining finished. Final Weights: " + Arrays.toString(weights));
         return this.weights;
@@ -79,113 +169,237 @@ public class TDBotTrainer {
     /**
      * Helper method to run a specific stage of training.
      * @param opponentName The name of the opponent for display.
+     * @param opponentFactory Creates one opponent per worker, bots keep search state and are not shared.
      * @param startEpoch The global epoch count to start from.
      */
-    private void runTrainingStage(String opponentName, int startEpoch) {
+    private void runTrainingStage(String opponentName, Supplier<SimpleBot> opponentFactory, int startEpoch) {
 
-        for (int i = 0; i < EPOCHS_PER_STAGE; i++) {
-            playSingleGameAndLearn();
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            boolean shared = updateMode == UpdateMode.HOGWILD || threads == 1;
+            workers.add(new Worker(opponentFactory.get(), random.nextLong(), shared));
+        }
+
+        ExecutorService pool = threads > 1 ? Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "td-trainer");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+
+        long start = System.nanoTime();
+        int played = 0;
+        int nextReport = 1000;
+        try {
+            while (played < EPOCHS_PER_STAGE) {
+                // one round: every worker plays its share of the next syncInterval * threads games
+                int roundGames = Math.min(syncInterval * threads, EPOCHS_PER_STAGE - played);
+                List<Callable<Void>> round = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    Worker worker = workers.get(i);
+                    int games = roundGames / threads + (i < roundGames % threads ? 1 : 0);
+                    round.add(() -> {
+                        worker.pullShared();
+                        for (int game = 0; game < games; game++) {
+                            worker.playSingleGameAndLearn();
+                        }
+                        return null;
+                    });
+                }
+                runRound(pool, round);
+                if (updateMode == UpdateMode.AVERAGED && threads > 1) {
+                    averageInto(workers);
+                }
+                played += roundGames;
+
+                int currentGlobalEpoch = startEpoch + played;
+                if (currentGlobalEpoch - startEpoch >= nextReport) {
+                    // a short progress line on the console, the whole weight vector in the trace
+                    System.out.printf("Epoch %d/%d (vs %s): Weight 0 is now %.4f%n",
+                            currentGlobalEpoch, TOTAL_EPOCHS, opponentName, weights[0]);
+                    if (Trace.TRAINER.isEnabled(Trace.INFO)) {
+                        Trace.TRAINER.logf(Trace.INFO, "Epoch %d/%d (vs %s): Weights are now %s",
+                                currentGlobalEpoch, TOTAL_EPOCHS, opponentName, Arrays.toString(weights));
+                    }
+                }
+                while (nextReport <= played) {
+                    nextReport += 1000;
+                }
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
 
-            int currentGlobalEpoch = startEpoch + i + 1;
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Stage finished: %d games in %.1f s (%.0f games/s)%n",
+                played, seconds, played / seconds);
+    }
 
-            if (currentGlobalEpoch % 1000 == 0) {
-                System.out.printf("Epoch %d/%d (vs %s): Weight 0 is now %.4f\n",
-                        currentGlobalEpoch, TOTAL_EPOCHS, opponentName, weights[0]);
+    private void runRound(ExecutorService pool, List<Callable<Void>> round) {
+        if (pool == null) {
+            for (Callable<Void> task : round) {
+                try {
+                    task.call();
+                } catch (Exception e) {
+                    throw new IllegalStateException("training game failed", e);
+                }
+            }
+            return;
+        }
+        try {
+            for (Future<Void> future : pool.invokeAll(round)) {
+                future.get();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("training was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("training thread failed", e.getCause());
         }
     }
 
+    // AVERAGED mode: the shared weights become the mean of the workers' copies
+    private void averageInto(List<Worker> workers) {
+        Arrays.fill(weights, 0);
+        for (Worker worker : workers) {
+            for (int j = 0; j < NUM_FEATURES; j++) {
+                weights[j] += worker.weights[j] / workers.size();
+            }
+        }
 
-    private void playSingleGameAndLearn() {
+        double[][] shared = patterns.getTables();
+        for (int t = 0; t < shared.length; t++) {
+            double[] table = shared[t];
+            Arrays.fill(table, 0);
+            for (Worker worker : workers) {
+                double[] own = worker.patterns.getTables()[t];
+                for (int k = 0; k < table.length; k++) {
+                    table[k] += own[k];
+                }
+            }
+            for (int k = 0; k < table.length; k++) {
+                table[k] /= workers.size();
+            }
+        }
+    }
 
-        char[][] board = new char[SIZE][SIZE];
-        Reversi.initializeBoard(board);
+    /*
 
-        char player1 = BLACK;
-        char player2 = WHITE;
-        char currentPlayer = player1;
+        Everything one training thread needs: its own agent, opponent, board and random generator. In HOGWILD mode
+        the agent's weights and pattern tables are the trainer's own arrays, in AVERAGED mode they are copies.
+     */
+    private class Worker {
+
+        private final MomijiManjuBot botAgent;
+        private SimpleBot opponentAgent;
+        private final Random random;
+        private final int[] moveBuffer = new int[32]; // reused by the epsilon-greedy exploration
+        private final PatternBoard board = new PatternBoard();
+        private final ReplayBuffer replay = new ReplayBuffer(REPLAY_CAPACITY, NUM_FEATURES);
+        private int pendingSamples = 0; // positions added since the last mini-batch
 
-        // Note: featureHistory only records states before P1's moves
-        List<double[]> featureHistory = new ArrayList<>();
+        private final double[] weights;
+        private final PatternEvaluator patterns;
 
-        // Loop continues as long as at least one player can make a move
-        while (canAnyPlayerMove(board)) {
+        Worker(SimpleBot opponentAgent, long seed, boolean shared) {
+            this.opponentAgent = opponentAgent;
+            this.random = new Random(seed);
+            opponentAgent.setSeed(random.nextLong()); // the same seed would give the opponent the worker's own sequence
 
-            int[] move = null;
-            List<String> validMoves = Reversi.getValidMoves(board, currentPlayer);
+            this.weights = shared ? TDBotTrainer.this.weights : TDBotTrainer.this.weights.clone();
+            this.patterns = shared ? TDBotTrainer.this.patterns : new PatternEvaluator();
 
-            if (!validMoves.isEmpty()) {
+            botAgent = new MomijiManjuBot(this.weights, this.patterns);
+            botAgent.setEndgameEmpties(0); // the agent has to learn from its own evaluation, not from the solver
+        }
 
-                if (currentPlayer == player1) {
-                    // --- TD Agent's Turn (Learning Player) ---
+        // AVERAGED mode: start the round from the current shared weights
+        void pullShared() {
+            if (weights == TDBotTrainer.this.weights) {
+                return;
+            }
+            System.arraycopy(TDBotTrainer.this.weights, 0, weights, 0, NUM_FEATURES);
+            double[][] shared = TDBotTrainer.this.patterns.getTables();
+            double[][] own = patterns.getTables();
+            for (int t = 0; t < shared.length; t++) {
+                System.arraycopy(shared[t], 0, own[t], 0, shared[t].length);
+            }
+        }
 
-                    // 1. Record features before move (State S)
-                    double[] featuresS = botAgent.extractFeatures(board, player1);
-                    featureHistory.add(featuresS);
+        void playSingleGameAndLearn() {
 
-                    // 2. Select move using Epsilon-Greedy
-                    move = getEpsilonGreedyMove(board, player1);
+            board.reset();
+            replay.beginGame();
 
-                } else {
-                    // --- Opponent's Turn (Current Opponent) ---
-                    // The opponentAgent instance is set in the train() method
-                    move = opponentAgent.getBotMove(board, player2);
-                }
+            char player1 = BLACK;
+            char player2 = WHITE;
+            char currentPlayer = player1;
 
-                // 3. Execute Move
-                if (move != null) {
-                    Reversi.makeMove(board, move[0], move[1], currentPlayer);
-                }
-            }
+            // Loop continues as long as at least one player can make a move
+            while (canAnyPlayerMove(board)) {
 
-            // 4. Switch Player
-            currentPlayer = Reversi.getOpponent(currentPlayer);
-        }
+                int[] move = null;
 
-        // --- Learning Phase: Back-up from the Final Reward ---
-        int p1Count = Reversi.countPieces(board, player1);
-        int p2Count = Reversi.countPieces(board, player2);
+                if (board.legalMoves(currentPlayer) != 0) {
 
-        double finalReward = (p1Count > p2Count) ? 1.0 : (p1Count < p2Count) ? -1.0 : 0.0;
+                    if (currentPlayer == player1) {
+                        // --- TD Agent's Turn (Learning Player) ---
 
-        double targetValue = finalReward;
+                        // 1. Record the state before the move (State S), only P1's states are kept
+                        replay.add(botAgent, patterns, board, player1);
 
-        // Iterate backward through the game history
-        for (int i = featureHistory.size() - 1; i >= 0; i--) {
-            double[] featuresS = featureHistory.get(i);
+                        // 2. Select move using Epsilon-Greedy
+                        move = getEpsilonGreedyMove(board, player1);
 
-            double valueS = botAgent.estimateValue(featuresS, weights);
+                    } else {
+                        // --- Opponent's Turn (Current Opponent) ---
+                        move = opponentAgent.getBotMove(board, player2);
+                    }
 
-            double tdError = targetValue - valueS;
+                    // 3. Execute Move
+                    if (move != null) {
+                        board.makeMove(BitBoard.square(move[0], move[1]), currentPlayer);
+                    }
+                }
 
-            for (int j = 0; j < NUM_FEATURES; j++) {
-                weights[j] += ALPHA * tdError * featuresS[j];
+                // 4. Switch Player
+                currentPlayer = Reversi.getOpponent(currentPlayer);
             }
 
-            targetValue = valueS;
-        }
+            // --- Learning Phase: Back-up from the Final Reward ---
+            int p1Count = board.count(player1);
+            int p2Count = board.count(player2);
 
-        // Update the agent with the new weights
-        botAgent.setWeights(this.weights);
-    }
+            double finalReward = (p1Count > p2Count) ? 1.0 : (p1Count < p2Count) ? -1.0 : 0.0;
 
-    private boolean canAnyPlayerMove(char[][] board) {
-        return !Reversi.getValidMoves(board, BLACK).isEmpty() || !Reversi.getValidMoves(board, WHITE).isEmpty();
-    }
+            // targets for the game's states, then learn from the buffer once enough new states came in
+            pendingSamples += replay.endGame(finalReward, weights, patterns);
+
+            while (pendingSamples >= BATCH_SIZE && replay.size() >= BATCH_SIZE) {
+                replay.train(random, BATCH_SIZE, weights, patterns, ALPHA, PATTERN_ALPHA);
+                pendingSamples -= BATCH_SIZE;
+            }
+        }
 
-    private int[] getEpsilonGreedyMove(char[][] board, char player) {
-        List<String> validMoves = Reversi.getValidMoves(board, player);
-        if (validMoves.isEmpty()) return null;
+        private int[] getEpsilonGreedyMove(BitBoard board, char player) {
+            int count = board.generateMoves(player, moveBuffer);
+            if (count == 0) return null;
 
-        double epsilon = 0.1; // 10% chance to explore (make a random move)
+            double epsilon = 0.1; // 10% chance to explore (make a random move)
 
-        if (random.nextDouble() < epsilon) {
-            // Exploration: Choose a random valid move
-            String randomMove = validMoves.get(random.nextInt(validMoves.size()));
-            return opponentAgent.convertMove(randomMove); // Use the opponent's convertMove method
-        } else {
-            // Exploitation: Choose the best move based on current V(S') estimates
-            return botAgent.getBotMove(board, player);
+            if (random.nextDouble() < epsilon) {
+                // Exploration: Choose a random valid move
+                int randomMove = moveBuffer[random.nextInt(count)];
+                return new int[] { randomMove / SIZE, randomMove % SIZE };
+            } else {
+                // Exploitation: Choose the best move based on current V(S') estimates
+                return botAgent.getBotMove(board, player);
+            }
         }
     }
-}
\ No newline at end of file
+
+    private static boolean canAnyPlayerMove(BitBoard board) {
+        return board.legalMoves(BLACK) != 0 || board.legalMoves(WHITE) != 0;
+    }
+}
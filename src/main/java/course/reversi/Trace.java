@@ -0,0 +1,182 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    Trace is the diagnostic output of the engine. Every subsystem (move generation, search, trainer and UI)
+    has its own channel with its own level, read once from system properties when the class loads:
+
+        -Dreversi.trace.search=debug            level of a channel (off, error, warn, info, debug)
+        -Dreversi.trace.search.sample=100       only keep one out of every 100 messages of that channel
+        -Dreversi.trace.file=reversi-trace.log  where the messages go
+
+    Callers check the channel before building a message, so a disabled channel only costs one comparison
+    against a final field:
+
+        if (Trace.SEARCH.isEnabled(Trace.DEBUG)) {
+            Trace.SEARCH.log(Trace.DEBUG, "best move " + move);
+        }
+
+    Messages are handed to a background thread which writes them to the trace file in batches. If the
+    writer falls behind, messages are dropped (and counted) instead of slowing the engine down.
+
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class Trace {
+
+    // levels, from most to least important
+    public static final int OFF = 0;
+    public static final int ERROR = 1;
+    public static final int WARN = 2;
+    public static final int INFO = 3;
+    public static final int DEBUG = 4;
+
+    private static final String[] LEVEL_NAMES = {"OFF", "ERROR", "WARN", "INFO", "DEBUG"};
+
+    public static final Channel MOVEGEN = new Channel("movegen");
+    public static final Channel SEARCH = new Channel("search");
+    public static final Channel TRAINER = new Channel("trainer");
+    public static final Channel UI = new Channel("ui");
+
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final BlockingQueue<String> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final AtomicLong dropped = new AtomicLong();
+    private static volatile Thread writerThread = null;
+    private static final Object fileLock = new Object();
+    private static BufferedWriter writer = null;
+
+    private Trace() {
+    }
+
+    public static final class Channel {
+        private final String name;
+        private final int level;
+        private final int sampleEvery;
+        private int calls = 0; // not synchronized, an occasional lost count only shifts the sampling a little
+
+        private Channel(String name) {
+            this.name = name;
+            this.level = parseLevel(System.getProperty("reversi.trace." + name, "off"));
+            this.sampleEvery = Math.max(1, Integer.getInteger("reversi.trace." + name + ".sample", 1));
+        }
+
+        // true when a message of the given level should be written. Also applies the sampling of the channel.
+        public boolean isEnabled(int messageLevel) {
+            if (messageLevel > level) {
+                return false;
+            }
+            return sampleEvery == 1 || (++calls % sampleEvery) == 0;
+        }
+
+        public void log(int messageLevel, String message) {
+            enqueue(System.currentTimeMillis() + " " + LEVEL_NAMES[messageLevel] + " [" + name + "] " + message);
+        }
+
+        public void logf(int messageLevel, String format, Object... args) {
+            log(messageLevel, String.format(format, args));
+        }
+    }
+
+    private static int parseLevel(String value) {
+        for (int i = 0; i < LEVEL_NAMES.length; i++) {
+            if (LEVEL_NAMES[i].equalsIgnoreCase(value.trim())) {
+                return i;
+            }
+        }
+        return OFF;
+    }
+
+    private static void enqueue(String line) {
+        if (writerThread == null) {
+            startWriter();
+        }
+        if (!queue.offer(line)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    // number of messages that were thrown away because the writer could not keep up
+    public static long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private static synchronized void startWriter() {
+        if (writerThread != null) {
+            return;
+        }
+        String file = System.getProperty("reversi.trace.file", "reversi-trace.log");
+        writerThread = new Thread(() -> writeLoop(file), "reversi-trace-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        // write out whatever is still queued when the program ends
+        Runtime.getRuntime().addShutdownHook(new Thread(Trace::flushRemaining));
+    }
+
+    private static void writeLoop(String file) {
+        List<String> batch = new ArrayList<>();
+        try {
+            synchronized (fileLock) {
+                writer = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            while (true) {
+                String first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch);
+                writeBatch(batch);
+                batch.clear();
+            }
+        } catch (IOException e) {
+            System.err.println("Trace output disabled, could not write " + file + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void writeBatch(List<String> batch) throws IOException {
+        synchronized (fileLock) {
+            for (String line : batch) {
+                writer.write(line);
+                writer.newLine();
+            }
+            // only flush once the queue is empty, so bursts are written in large blocks
+            if (queue.isEmpty()) {
+                writer.flush();
+            }
+        }
+    }
+
+    private static void flushRemaining() {
+        List<String> batch = new ArrayList<>();
+        queue.drainTo(batch);
+        synchronized (fileLock) {
+            if (writer == null) {
+                return;
+            }
+            try {
+                writeBatch(batch);
+                writer.flush();
+            } catch (IOException e) {
+                System.err.println("Could not flush the trace file: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    TranspositionTable remembers the result of searched positions so that a position reached through a
+    different move order does not have to be searched again. It is a fixed-size table of 2^n entries sized
+    from a memory budget, indexed by the Zobrist hash of the position.
+
+    Each entry is two longs: the key and a packed data word holding the score, the search depth, the bound
+    type, the best move and the age of the search that stored it. The key is stored XORed with the data, so
+    an entry whose two words do not belong together simply fails to match.
+
+    Entries are grouped in buckets of two. A new result replaces the entry of the same position if there is
+    one, otherwise the one left over from an older search, otherwise the shallower one. The age goes up with
+    every newSearch(), which lets the table be kept from one move to the next without old entries blocking
+    new ones.
+
+ */
+
+public class TranspositionTable {
+
+    // bound types
+    public static final int EXACT = 0;
+    public static final int LOWER = 1; // the score is at least this value (the search failed high)
+    public static final int UPPER = 2; // the score is at most this value (the search failed low)
+
+    public static final int NO_MOVE = 64;
+
+    private static final int ENTRY_BYTES = 16;
+    private static final long VALID = 1L << 63;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+    private int age = 0;
+
+    public TranspositionTable(int megabytes) {
+        long entries = Long.highestOneBit(Math.max(2L, (long) megabytes * 1024 * 1024 / ENTRY_BYTES));
+        int size = (int) Math.min(entries, 1 << 30);
+        this.keys = new long[size];
+        this.data = new long[size];
+        this.mask = size - 1;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    // called once per move, entries from earlier moves become the first to be replaced
+    public void newSearch() {
+        age = (age + 1) & 0xFF;
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(keys, 0);
+        java.util.Arrays.fill(data, 0);
+    }
+
+    // returns the packed data stored for the position, or 0 when there is none
+    public long probe(long key) {
+        int index = (int) key & mask & ~1;
+        for (int i = index; i <= index + 1; i++) {
+            long entry = data[i];
+            if (entry != 0 && (keys[i] ^ entry) == key) {
+                return entry;
+            }
+        }
+        return 0;
+    }
+
+    public void store(long key, int depth, int bound, int score, int move) {
+        int index = (int) key & mask & ~1;
+        long entry = VALID
+                | ((long) age << 49)
+                | ((long) move << 42)
+                | ((long) bound << 40)
+                | ((long) depth << 32)
+                | (score & 0xFFFFFFFFL);
+
+        int slot = index;
+        for (int i = index; i <= index + 1; i++) {
+            long old = data[i];
+            if (old == 0 || (keys[i] ^ old) == key) {
+                slot = i;
+                break;
+            }
+            if (worth(old) < worth(data[slot])) {
+                slot = i;
+            }
+        }
+
+        data[slot] = entry;
+        keys[slot] = key ^ entry;
+    }
+
+    // entries of the current search are worth more than any older ones, then deeper beats shallower
+    private int worth(long entry) {
+        return (age(entry) == age ? 256 : 0) + depth(entry);
+    }
+
+    // --- unpacking of the data word returned by probe ---
+
+    public static int score(long entry) {
+        return (int) entry;
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    public static int bound(long entry) {
+        return (int) (entry >>> 40) & 0x3;
+    }
+
+    public static int move(long entry) {
+        return (int) (entry >>> 42) & 0x7F;
+    }
+
+    private static int age(long entry) {
+        return (int) (entry >>> 49) & 0xFF;
+    }
+}
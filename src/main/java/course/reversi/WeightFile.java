@@ -0,0 +1,134 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    WeightFile reads and writes the weights MomijiManjuBot plays with: the linear feature weights and the
+    PatternEvaluator tables. TDBotTrainer writes one after training and the bot loads it when it is created.
+
+    File layout (big-endian):
+
+        int     magic "RVWT"
+        int     version
+        int     feature set id, a checksum of the feature count and the pattern shapes. A file trained for
+                other features is refused instead of being read into the wrong slots.
+        int     payload length in bytes
+        int     CRC32 of the payload
+        int     reserved (0), keeps the payload 8-byte aligned
+        payload the feature weights, then every pattern table in Pattern order, all as doubles
+
+    The file is memory-mapped when loaded. The checksum is taken over the mapping and the tables are copied
+    straight out of it, so there is no stream parsing of the 150k table entries.
+
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+public final class WeightFile {
+
+    public static final String DEFAULT_FILE = "momiji.weights";
+
+    private static final int MAGIC = 0x52565754; // "RVWT"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+
+    private WeightFile() {
+    }
+
+    // changes whenever the number of features or the pattern shapes change
+    static int featureSetId(int featureCount) {
+        CRC32 crc = new CRC32();
+        StringBuilder description = new StringBuilder("features:").append(featureCount);
+        for (PatternEvaluator.Pattern pattern : PatternEvaluator.Pattern.values()) {
+            description.append(';').append(pattern.name()).append(':').append(pattern.length());
+        }
+        crc.update(description.toString().getBytes(StandardCharsets.US_ASCII));
+        return (int) crc.getValue();
+    }
+
+    private static int payloadBytes(int featureCount, PatternEvaluator patterns) {
+        long doubles = featureCount;
+        for (double[] table : patterns.getTables()) {
+            doubles += table.length;
+        }
+        return Math.toIntExact(doubles * Double.BYTES);
+    }
+
+    public static void write(Path file, double[] weights, PatternEvaluator patterns) throws IOException {
+        int payloadBytes = payloadBytes(weights.length, patterns);
+        ByteBuffer payload = ByteBuffer.allocate(payloadBytes);
+        DoubleBuffer doubles = payload.asDoubleBuffer();
+        doubles.put(weights);
+        for (double[] table : patterns.getTables()) {
+            doubles.put(table);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(featureSetId(weights.length))
+                .putInt(payloadBytes).putInt((int) crc.getValue()).putInt(0);
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (payload.hasRemaining()) {
+                channel.write(payload);
+            }
+        }
+    }
+
+    /*
+
+        Reads the file into the given weight array and pattern tables. Anything wrong with the file (other
+        format, other feature set, wrong size, bad checksum) is an IOException and leaves both untouched.
+     */
+    public static void load(Path file, double[] weights, PatternEvaluator patterns) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("weight file is truncated");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (mapped.getInt(0) != MAGIC) {
+                throw new IOException("not a weight file");
+            }
+            if (mapped.getInt(4) != VERSION) {
+                throw new IOException("unsupported weight file version " + mapped.getInt(4));
+            }
+            if (mapped.getInt(8) != featureSetId(weights.length)) {
+                throw new IOException("weight file was trained for a different feature set");
+            }
+            int payloadBytes = mapped.getInt(12);
+            if (payloadBytes != payloadBytes(weights.length, patterns) || channel.size() != HEADER_BYTES + (long) payloadBytes) {
+                throw new IOException("weight file has the wrong size");
+            }
+
+            ByteBuffer payload = mapped.slice(HEADER_BYTES, payloadBytes);
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != mapped.getInt(16)) {
+                throw new IOException("weight file checksum does not match");
+            }
+
+            DoubleBuffer doubles = payload.asDoubleBuffer();
+            doubles.get(weights);
+            for (double[] table : patterns.getTables()) {
+                doubles.get(table);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    Zobrist hashing for BitBoard positions. Every (colour, square) pair gets a fixed random 64-bit key and a
+    position hashes to the XOR of the keys of its pieces, plus one more key when White is to move. Because
+    XOR undoes itself, the hash of a child position is the parent hash XOR the keys that a move changes,
+    so a search can keep it up to date without rescanning the board.
+
+    The keys come from a fixed seed, so hashes are the same from one run to the next.
+
+ */
+
+import java.util.SplittableRandom;
+
+public final class Zobrist {
+
+    private static final long[] BLACK_KEYS = new long[64];
+    private static final long[] WHITE_KEYS = new long[64];
+    // BLACK_KEYS[i] ^ WHITE_KEYS[i], what a flip on square i changes
+    private static final long[] FLIP_KEYS = new long[64];
+
+    public static final long WHITE_TO_MOVE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EED_0F_0E11L);
+        for (int i = 0; i < 64; i++) {
+            BLACK_KEYS[i] = random.nextLong();
+            WHITE_KEYS[i] = random.nextLong();
+            FLIP_KEYS[i] = BLACK_KEYS[i] ^ WHITE_KEYS[i];
+        }
+        WHITE_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    // full hash of a position, only needed once at the root of a search
+    public static long hash(BitBoard board, char sideToMove) {
+        long hash = sideToMove == Reversi.WHITE ? WHITE_TO_MOVE : 0;
+        long black = board.getBlack();
+        while (black != 0) {
+            hash ^= BLACK_KEYS[Long.numberOfTrailingZeros(black)];
+            black &= black - 1;
+        }
+        long white = board.getWhite();
+        while (white != 0) {
+            hash ^= WHITE_KEYS[Long.numberOfTrailingZeros(white)];
+            white &= white - 1;
+        }
+        return hash;
+    }
+
+    /*
+
+        What a move changes in the hash: the placed piece, every flipped piece and the side to move. XOR it into
+        the parent hash to get the child hash, and XOR it again to get back.
+     */
+    public static long moveKey(int square, long flipped, char player) {
+        long key = (player == Reversi.BLACK ? BLACK_KEYS[square] : WHITE_KEYS[square]) ^ WHITE_TO_MOVE;
+        while (flipped != 0) {
+            key ^= FLIP_KEYS[Long.numberOfTrailingZeros(flipped)];
+            flipped &= flipped - 1;
+        }
+        return key;
+    }
+
+    // a pass only changes the side to move
+    public static long passKey() {
+        return WHITE_TO_MOVE;
+    }
+}
@@ -0,0 +1,67 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    Arena's result statistics on fixed win/draw/loss counts, against values worked out by hand: the Elo
+    conversions, a pairing's Elo and its 95% margin, and the SPRT verdicts for a clear pass, a clear fail and
+    results that cannot decide yet.
+
+ */
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ArenaTest {
+
+    private static final Arena.Entrant FIRST = new Arena.Entrant("first", DumbBot::new);
+    private static final Arena.Entrant SECOND = new Arena.Entrant("second", DumbBot::new);
+
+    @Test
+    void eloConversions() {
+        assertEquals(0.5, Arena.scoreFromElo(0), 1e-12);
+        assertEquals(10.0 / 11.0, Arena.scoreFromElo(400), 1e-12);
+        assertEquals(0.240253, Arena.scoreFromElo(-200), 1e-6);
+        assertEquals(190.8485, Arena.eloFromScore(0.75), 1e-4);
+        for (int elo = -600; elo <= 600; elo += 50) {
+            assertEquals(elo, Arena.eloFromScore(Arena.scoreFromElo(elo)), 1e-9);
+        }
+    }
+
+    @Test
+    void matchEloAndMargin() {
+        Arena.Match match = match(60, 20, 20);
+        assertEquals(100, match.games());
+        assertEquals(0.7, match.score(), 1e-12);
+        assertEquals(147.1907, match.elo(), 1e-4);
+        assertEquals(66.0146, match.eloMargin(), 1e-4);
+
+        // no spread in the results yet, so no margin
+        assertEquals(Double.POSITIVE_INFINITY, match(10, 0, 0).eloMargin());
+        assertEquals(0.0, match(0, 0, 0).elo(), 1e-12);
+    }
+
+    @Test
+    void sprtVerdicts() {
+        Arena arena = new Arena();
+        // H0: Elo <= 0 against H1: Elo >= 20, bounds +/- log(19) = 2.944
+        arena.setSprt(0, 20, 0.05, 0.05);
+
+        assertEquals(Arena.Verdict.PASS, arena.sprtVerdict(match(60, 20, 20)));     // LLR  3.336
+        assertEquals(Arena.Verdict.FAIL, arena.sprtVerdict(match(20, 20, 60)));     // LLR -3.852
+        assertEquals(Arena.Verdict.UNDECIDED, arena.sprtVerdict(match(45, 10, 45))); // LLR -0.184
+        assertEquals(Arena.Verdict.UNDECIDED, arena.sprtVerdict(match(30, 40, 30))); // LLR -0.276
+        // all wins has no variance to test with
+        assertEquals(Arena.Verdict.UNDECIDED, arena.sprtVerdict(match(50, 0, 0)));
+    }
+
+    private static Arena.Match match(int wins, int draws, int losses) {
+        Arena.Match match = new Arena.Match(FIRST, SECOND);
+        for (int i = 0; i < wins; i++) match.record(1);
+        for (int i = 0; i < draws; i++) match.record(0);
+        for (int i = 0; i < losses; i++) match.record(-1);
+        return match;
+    }
+}
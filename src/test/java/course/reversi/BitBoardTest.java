@@ -0,0 +1,62 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    BitBoard against the known perft counts of the start position (on every Perft backend, so the char[][]
+    routines and the plain reference scan are held to the same numbers), and makeMove/undoMove putting back
+    exactly the board they started from.
+
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class BitBoardTest {
+
+    // leaf counts of the start position at depth 1 to 6
+    private static final long[] PERFT = {4, 12, 56, 244, 1396, 8200};
+
+    @Test
+    void perftMatchesTheKnownCounts() {
+        for (Perft.Backend backend : Perft.Backend.values()) {
+            for (int depth = 1; depth <= PERFT.length; depth++) {
+                assertEquals(PERFT[depth - 1], Perft.perft(new BitBoard(), Reversi.BLACK, depth, backend),
+                        backend + " depth " + depth);
+            }
+        }
+    }
+
+    @Test
+    void undoMoveRestoresTheBoard() {
+        Random random = new Random(1);
+        int[] moves = new int[32];
+        for (int game = 0; game < 200; game++) {
+            BitBoard board = new BitBoard();
+            char player = Reversi.BLACK;
+            while (board.legalMoves(Reversi.BLACK) != 0 || board.legalMoves(Reversi.WHITE) != 0) {
+                int n = board.generateMoves(player, moves);
+                if (n > 0) {
+                    // every legal move, made and taken back, leaves the board as it was
+                    for (int i = 0; i < n; i++) {
+                        long black = board.getBlack();
+                        long white = board.getWhite();
+                        long flipped = board.makeMove(moves[i], player);
+                        assertNotEquals(0, flipped, BitBoard.squareName(moves[i]));
+                        assertEquals(black | white | BitBoard.bit(moves[i]), board.getBlack() | board.getWhite());
+                        board.undoMove(moves[i], flipped, player);
+                        assertEquals(black, board.getBlack());
+                        assertEquals(white, board.getWhite());
+                    }
+                    board.makeMove(moves[random.nextInt(n)], player);
+                }
+                player = Reversi.getOpponent(player);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    EndgameSolver against a plain minimax with no pruning and no move ordering, on positions from random games
+    with at most 10 empty squares: the exact solve has to find the true disc differential and a move that
+    reaches it, and the win/loss/draw solve the right sign.
+
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EndgameSolverTest {
+
+    @Test
+    void solveMatchesBruteForce() {
+        Random random = new Random(7);
+        EndgameSolver solver = new EndgameSolver();
+        int[] moves = new int[32];
+        int solved = 0;
+        while (solved < 60) {
+            char player = Reversi.BLACK;
+            BitBoard board = randomGame(random, 8 + random.nextInt(3), moves);
+            if (board.empties() < 8) {
+                continue;
+            }
+            if (board.legalMoves(player) == 0) {
+                player = Reversi.getOpponent(player);
+                if (board.legalMoves(player) == 0) {
+                    continue;
+                }
+            }
+            String position = Long.toHexString(board.getBlack()) + "/" + Long.toHexString(board.getWhite());
+
+            long p = board.discs(player);
+            long o = board.discs(Reversi.getOpponent(player));
+            int best = bruteForce(p, o, false);
+
+            int move = solver.solve(board, player, Long.MAX_VALUE);
+            assertEquals(best, solver.getLastScore(), position);
+            long flipped = BitBoard.flips(p, o, move);
+            assertEquals(best, -bruteForce(o & ~flipped, p | flipped | BitBoard.bit(move), false), position);
+
+            solver.solveWinLossDraw(board, player, Long.MAX_VALUE);
+            assertEquals(Integer.signum(best), solver.getLastScore(), position);
+            solved++;
+        }
+    }
+
+    // plays random moves (the position passes as needed) until the given number of squares is left
+    private static BitBoard randomGame(Random random, int empties, int[] moves) {
+        BitBoard board = new BitBoard();
+        char player = Reversi.BLACK;
+        while (board.empties() > empties) {
+            int n = board.generateMoves(player, moves);
+            if (n == 0 && board.legalMoves(Reversi.getOpponent(player)) == 0) {
+                break;
+            }
+            if (n > 0) {
+                board.makeMove(moves[random.nextInt(n)], player);
+            }
+            player = Reversi.getOpponent(player);
+        }
+        // the solver is asked for Black, so a position with White to move is handed over with colours swapped
+        return player == Reversi.BLACK ? board : new BitBoard(board.getWhite(), board.getBlack());
+    }
+
+    // the final differential for p with best play on both sides, empty squares going to the winner
+    private static int bruteForce(long p, long o, boolean passed) {
+        long moves = BitBoard.legalMoves(p, o);
+        if (moves == 0) {
+            if (passed) {
+                int diff = Long.bitCount(p) - Long.bitCount(o);
+                int empties = Long.bitCount(~(p | o));
+                return diff > 0 ? diff + empties : diff < 0 ? diff - empties : 0;
+            }
+            return -bruteForce(o, p, true);
+        }
+        int best = -65;
+        while (moves != 0) {
+            int move = Long.numberOfTrailingZeros(moves);
+            moves &= moves - 1;
+            long flipped = BitBoard.flips(p, o, move);
+            best = Math.max(best, -bruteForce(o & ~flipped, p | flipped | BitBoard.bit(move), false));
+        }
+        return best;
+    }
+}
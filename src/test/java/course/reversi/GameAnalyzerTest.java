@@ -0,0 +1,49 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    GameAnalyzer on one of the shipped Human_vs_*.txt logs: every move of the game has to come out annotated,
+    not just the few before the first move the log reader got wrong.
+
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GameAnalyzerTest {
+
+    private static final Path LOG = Paths.get("Human_vs_MomijiManjuBot_2025-12-23_13-37-58.txt");
+
+    @Test
+    void annotatesEveryMoveOfAShippedLog() throws IOException {
+        GameAnalyzer analyzer = new GameAnalyzer();
+        analyzer.setDepth(2);
+        analyzer.setEndgameEmpties(8);
+        analyzer.setThreads(2);
+
+        StringWriter out = new StringWriter();
+        analyzer.analyze(List.of(LOG), out);
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(GameAnalyzer.HEADER, lines[0]);
+        int plies = 0;
+        for (int i = 1; i < lines.length; i++) {
+            assertFalse(lines[i].startsWith("#"), lines[i]);
+            plies++;
+        }
+        assertEquals(60, plies);
+        assertTrue(analyzer.getStats().containsKey("Human"));
+        assertTrue(analyzer.getStats().containsKey("MomijiManjuBot"));
+    }
+}
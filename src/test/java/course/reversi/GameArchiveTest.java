@@ -0,0 +1,134 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    GameArchive games written by the Writer and read back by the Reader, and an archive whose last write was
+    cut short: the Reader leaves out the game that did not make it, and a Writer opened on the files again
+    appends after the games that are whole.
+
+ */
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GameArchiveTest {
+
+    private static final String[] MODES = { "Human vs CastellaBot", "CastellaBot vs MapleBot" };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readerReturnsTheAppendedGames() throws IOException {
+        Path file = dir.resolve(GameArchive.DEFAULT_FILE);
+        byte[][] games = randomGames(new Random(5), 20);
+        append(file, games, 0);
+
+        GameArchive.Reader reader = GameArchive.Reader.open(file);
+        assertEquals(games.length, reader.size());
+        for (int i = 0; i < games.length; i++) {
+            assertGame(reader, i, games[i], i);
+        }
+        assertEquals(games.length / 2, reader.find(MODES[1], Long.MIN_VALUE, Long.MAX_VALUE, null).length);
+        assertArrayEquals(new int[] { 3, 4, 5 }, reader.find(null, 3_000, 5_000, null));
+    }
+
+    @Test
+    void truncatedTailIsLeftOut() throws IOException {
+        Path file = dir.resolve(GameArchive.DEFAULT_FILE);
+        byte[][] games = randomGames(new Random(6), 4);
+        append(file, games, 0);
+
+        // the last game lost its final moves, the index entry for it was written
+        truncate(file, 5);
+        assertEquals(3, GameArchive.Reader.open(file).size());
+
+        // the index lost part of an entry as well
+        truncate(GameArchive.indexFile(file), 10);
+        GameArchive.Reader reader = GameArchive.Reader.open(file);
+        assertEquals(3, reader.size());
+        for (int i = 0; i < 3; i++) {
+            assertGame(reader, i, games[i], i);
+        }
+
+        // appending again puts the new games right after the whole ones
+        byte[][] more = randomGames(new Random(7), 2);
+        append(file, more, 3);
+        reader = GameArchive.Reader.open(file);
+        assertEquals(5, reader.size());
+        for (int i = 0; i < 3; i++) {
+            assertGame(reader, i, games[i], i);
+        }
+        for (int i = 0; i < more.length; i++) {
+            assertGame(reader, 3 + i, more[i], 3 + i);
+        }
+    }
+
+    // game i gets the time i seconds and alternates between the two modes
+    private static void append(Path file, byte[][] games, int first) throws IOException {
+        try (GameArchive.Writer writer = GameArchive.Writer.open(file)) {
+            for (int i = 0; i < games.length; i++) {
+                writer.append(MODES[(first + i) % 2], (first + i) * 1_000L, games[i], games[i].length);
+            }
+        }
+    }
+
+    private static void assertGame(GameArchive.Reader reader, int game, byte[] squares, int number) {
+        assertEquals(MODES[number % 2], reader.getMode(game));
+        assertEquals(number * 1_000L, reader.getTime(game));
+
+        int[] moves = new int[60];
+        assertEquals(squares.length, reader.getMoves(game, moves));
+        assertEquals(squares.length, reader.getMoveCount(game));
+        for (int i = 0; i < squares.length; i++) {
+            assertEquals(squares[i], moves[i], "move " + i + " of game " + game);
+        }
+
+        BitBoard board = new BitBoard();
+        assertEquals(squares.length, GameArchive.replay(board, squares, squares.length));
+        assertEquals(board.count(Reversi.BLACK), reader.getBlackDiscs(game));
+        assertEquals(board.count(Reversi.WHITE), reader.getWhiteDiscs(game));
+        assertEquals(GameArchive.Result.of(board.count(Reversi.BLACK), board.count(Reversi.WHITE)), reader.getResult(game));
+    }
+
+    // whole random games, passes left out as the archive stores them
+    private static byte[][] randomGames(Random random, int count) {
+        byte[][] games = new byte[count][];
+        int[] moves = new int[32];
+        for (int game = 0; game < count; game++) {
+            BitBoard board = new BitBoard();
+            byte[] squares = new byte[60];
+            int length = 0;
+            char player = Reversi.BLACK;
+            while (board.legalMoves(Reversi.BLACK) != 0 || board.legalMoves(Reversi.WHITE) != 0) {
+                int n = board.generateMoves(player, moves);
+                if (n > 0) {
+                    int square = moves[random.nextInt(n)];
+                    board.makeMove(square, player);
+                    squares[length++] = (byte) square;
+                }
+                player = Reversi.getOpponent(player);
+            }
+            games[game] = Arrays.copyOf(squares, length);
+        }
+        return games;
+    }
+
+    private static void truncate(Path file, int bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - bytes);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    OpeningBook built from a few short games, written and loaded again: the book plays the moves it was given,
+    in any of the board's symmetries, trusts none it saw only once, and refuses a file that was changed or cut
+    short.
+
+ */
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OpeningBookTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void lookupPlaysTheBuiltMoves() throws IOException {
+        OpeningBook book = OpeningBook.load(buildBook());
+        // D3 C5, twice, and D3 C5 B6 once. C4 is D3 reflected, so the book entry is shared.
+        assertEquals(3, book.size());
+
+        assertEquals(BitBoard.parseSquare("C5"), book.lookup(play("D3"), Reversi.WHITE));
+        assertEquals(BitBoard.parseSquare("E3"), book.lookup(play("C4"), Reversi.WHITE));
+        // played once only
+        assertEquals(-1, book.lookup(play("D3", "C5"), Reversi.BLACK));
+        // never played
+        assertEquals(-1, book.lookup(play("D3", "C3"), Reversi.BLACK));
+    }
+
+    @Test
+    void damagedFileIsRefused() throws IOException {
+        Path file = buildBook();
+        byte[] bytes = Files.readAllBytes(file);
+
+        byte[] flipped = bytes.clone();
+        flipped[flipped.length - 1] ^= 1;
+        Files.write(file, flipped);
+        assertThrows(IOException.class, () -> OpeningBook.load(file));
+
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IOException.class, () -> OpeningBook.load(file));
+
+        Files.write(file, Arrays.copyOf(bytes, 6));
+        assertThrows(IOException.class, () -> OpeningBook.load(file));
+    }
+
+    private Path buildBook() throws IOException {
+        OpeningBook.Builder builder = new OpeningBook.Builder();
+        addGame(builder, "D3", "C5");
+        addGame(builder, "D3", "C5", "B6");
+        Path file = dir.resolve(OpeningBook.DEFAULT_FILE);
+        builder.write(file);
+        return file;
+    }
+
+    // moves alternate from Black, the openings here have no passes
+    private static void addGame(OpeningBook.Builder builder, String... moves) {
+        char[] movers = new char[moves.length];
+        int[] squares = new int[moves.length];
+        for (int i = 0; i < moves.length; i++) {
+            movers[i] = i % 2 == 0 ? Reversi.BLACK : Reversi.WHITE;
+            squares[i] = BitBoard.parseSquare(moves[i]);
+        }
+        builder.addGame(movers, squares, moves.length);
+    }
+
+    private static BitBoard play(String... moves) {
+        BitBoard board = new BitBoard();
+        for (int i = 0; i < moves.length; i++) {
+            board.makeMove(BitBoard.parseSquare(moves[i]), i % 2 == 0 ? Reversi.BLACK : Reversi.WHITE);
+        }
+        return board;
+    }
+}
@@ -0,0 +1,98 @@
+package course.reversi;
+
+/*
+
+    Content:
+
+    WeightFile giving back exactly the weights and pattern tables it wrote, and refusing a file whose payload
+    was changed or cut short without touching what it was loading into.
+
+ */
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class WeightFileTest {
+
+    private static final int FEATURES = 6;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void loadReturnsWhatWasWritten() throws IOException {
+        Random random = new Random(3);
+        double[] weights = randomWeights(random);
+        PatternEvaluator patterns = randomPatterns(random);
+        Path file = dir.resolve(WeightFile.DEFAULT_FILE);
+        WeightFile.write(file, weights, patterns);
+
+        double[] loadedWeights = new double[FEATURES];
+        PatternEvaluator loaded = new PatternEvaluator();
+        WeightFile.load(file, loadedWeights, loaded);
+
+        assertArrayEquals(weights, loadedWeights);
+        for (int i = 0; i < patterns.getTables().length; i++) {
+            assertArrayEquals(patterns.getTables()[i], loaded.getTables()[i], "table " + i);
+        }
+    }
+
+    @Test
+    void corruptFileIsRefused() throws IOException {
+        Random random = new Random(4);
+        Path file = dir.resolve(WeightFile.DEFAULT_FILE);
+        WeightFile.write(file, randomWeights(random), randomPatterns(random));
+        byte[] bytes = Files.readAllBytes(file);
+
+        // one bit of one table entry flipped: the checksum no longer matches
+        byte[] flipped = bytes.clone();
+        flipped[flipped.length / 2] ^= 1;
+        Files.write(file, flipped);
+        assertRefused(file);
+
+        // the last table cut short
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 8));
+        assertRefused(file);
+
+        // written for another number of features
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> WeightFile.load(file, new double[FEATURES + 1], new PatternEvaluator()));
+    }
+
+    private static void assertRefused(Path file) {
+        double[] weights = new double[FEATURES];
+        PatternEvaluator patterns = new PatternEvaluator();
+        assertThrows(IOException.class, () -> WeightFile.load(file, weights, patterns));
+        assertArrayEquals(new double[FEATURES], weights);
+        for (double[] table : patterns.getTables()) {
+            assertArrayEquals(new double[table.length], table);
+        }
+    }
+
+    private static double[] randomWeights(Random random) {
+        double[] weights = new double[FEATURES];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = random.nextGaussian();
+        }
+        return weights;
+    }
+
+    private static PatternEvaluator randomPatterns(Random random) {
+        PatternEvaluator patterns = new PatternEvaluator();
+        for (double[] table : patterns.getTables()) {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = random.nextGaussian();
+            }
+        }
+        return patterns;
+    }
+}